@@ -6,6 +6,10 @@ import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.BorderPane;
@@ -17,22 +21,51 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.w3c.dom.Text;
 
-import java.text.DecimalFormat;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.prefs.Preferences;
 
 public class AdminView extends Application {
 
+    private StoreContext storeContext;
     private UserManager userManager;
     private InventoryManager inventoryManager;
     private POSSystem posSystem;
     private CustomerManager customerManager;
+    private final List<BiConsumer<StoreContext.Change, Set<String>>> changeListeners = new ArrayList<>();
+    private TransactionQuery transactionQuery = TransactionQuery.ALL;
+    private boolean transactionQueryRunning;
+    private boolean transactionQueryStale;
+
+    public AdminView(StoreContext storeContext){
+        this.storeContext = storeContext;
+        this.userManager = storeContext.getUserManager();
+        this.inventoryManager = storeContext.getInventoryManager();
+        this.posSystem = storeContext.getPosSystem();
+        this.customerManager = storeContext.getCustomerManager();
+    }
+
+    // Listeners registered here are dropped again when the dashboard window closes.
+    private void onChange(StoreContext.Change change, Runnable action) {
+        BiConsumer<StoreContext.Change, Set<String>> listener = (changed, skus) -> {
+            if (changed != change) {
+                return;
+            }
+            if (Platform.isFxApplicationThread()) {
+                action.run();
+            } else {
+                Platform.runLater(action);
+            }
+        };
+        changeListeners.add(listener);
+        storeContext.addListener(listener);
+    }
 
-    public AdminView(UserManager userManager){
-        this.userManager = userManager;
-        this.inventoryManager= new InventoryManager();
-        this.posSystem=new POSSystem();
-        this.customerManager = new CustomerManager();
+    private void removeChangeListeners() {
+        changeListeners.forEach(storeContext::removeListener);
+        changeListeners.clear();
     }
 
     private Tab createTab(String title, boolean closable) {
@@ -64,12 +97,10 @@ public class AdminView extends Application {
 
         Button logoutButton = new Button("Logout");
         logoutButton.setOnAction(event -> {
-            customerManager = null;
-            inventoryManager = null;
-            posSystem = null;
             primaryStage.close();
             launchLoginView();
         });
+        primaryStage.setOnHidden(event -> removeChangeListeners());
 
         tabPane.getTabs().addAll(inventoryTab, userManagementTab, customerManagementTab, salesReportTab, settingsTab);
 
@@ -92,7 +123,7 @@ public class AdminView extends Application {
     private void launchLoginView() {
         Platform.runLater(() -> {
             try {
-                new LoginView(userManager, new POSController(inventoryManager), new AuthController()).start(new Stage());
+                new LoginView(storeContext).start(new Stage());
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -159,7 +190,6 @@ public class AdminView extends Application {
     }
 
     private void setupInventoryTab(Tab tab) {
-        InventoryManager inventoryManager = new InventoryManager();
         TableView<InventoryItem> inventoryTable = new TableView<>();
         setupInventoryTableColumns(inventoryTable);
 
@@ -182,6 +212,8 @@ public class AdminView extends Application {
         });
 
         inventoryTable.setItems(FXCollections.observableArrayList(inventoryManager.getAllItems()));
+        onChange(StoreContext.Change.INVENTORY,
+                () -> inventoryTable.setItems(FXCollections.observableArrayList(inventoryManager.getAllItems())));
 
         HBox buttonBar = new HBox(10, addButton, updateButton, removeButton, restockButton);
         buttonBar.setAlignment(Pos.CENTER);
@@ -194,7 +226,11 @@ public class AdminView extends Application {
 
     private void setupInventoryTableColumns(TableView<InventoryItem> table) {
 
-        double columnMultiplier = 1.0/4.0;
+        double columnMultiplier = 1.0/5.0;
+
+        TableColumn<InventoryItem, String> skuColumn = new TableColumn<>("SKU");
+        skuColumn.setCellValueFactory(new PropertyValueFactory<>("sku"));
+        skuColumn.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
         TableColumn<InventoryItem, String> nameColumn = new TableColumn<>("Name");
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
@@ -204,15 +240,16 @@ public class AdminView extends Application {
         categoryColumn.setCellValueFactory(new PropertyValueFactory<>("category"));
         categoryColumn.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
-        TableColumn<InventoryItem, Double> priceColumn = new TableColumn<>("Price");
+        TableColumn<InventoryItem, Long> priceColumn = new TableColumn<>("Price");
         priceColumn.setCellValueFactory(new PropertyValueFactory<>("price"));
+        priceColumn.setCellFactory(MoneyCell.forTableColumn());
         priceColumn.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
         TableColumn<InventoryItem, Integer> quantityColumn = new TableColumn<>("Quantity");
         quantityColumn.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         quantityColumn.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
-        table.getColumns().addAll(nameColumn, categoryColumn, priceColumn, quantityColumn);
+        table.getColumns().addAll(skuColumn, nameColumn, categoryColumn, priceColumn, quantityColumn);
     }
 
 
@@ -237,6 +274,8 @@ public class AdminView extends Application {
         purchasePriceField.setPromptText("Purchase Price");
         TextField amountBoughtField = new TextField();
         amountBoughtField.setPromptText("Amount Bought");
+        TextField skuField = new TextField();
+        skuField.setPromptText("Leave empty to generate");
         Label warningLabel = new Label();
         warningLabel.setTextFill(Color.RED);
 
@@ -248,6 +287,8 @@ public class AdminView extends Application {
         grid.add(priceField, 1, 2);
         grid.add(new Label("Supplier:"), 0, 3);
         grid.add(supplierField, 1, 3);
+        grid.add(new Label("SKU / Barcode:"), 0, 4);
+        grid.add(skuField, 1, 4);
         grid.add(new Label("Purchase Price:"), 0, 5);
         grid.add(purchasePriceField, 1, 5);
         grid.add(new Label("Amount Bought:"), 0, 6);
@@ -261,19 +302,25 @@ public class AdminView extends Application {
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == ButtonType.OK) {
                 String itemName = nameField.getText();
+                String sku = skuField.getText().trim();
                 if (manager.findItem(itemName) != null) {
                     warningLabel.setText("Item already exists!");
                     return null;
+                } else if (!sku.isEmpty() && manager.findItemBySku(sku) != null) {
+                    warningLabel.setText("SKU already exists!");
+                    return null;
                 }else{
-                return new InventoryItem(
+                InventoryItem item = new InventoryItem(
                         nameField.getText(),
                         categoryField.getText(),
-                        Double.parseDouble(priceField.getText()),
+                        Money.parse(priceField.getText()),
                         Integer.parseInt(amountBoughtField.getText()),
                         supplierField.getText(),
-                        Double.parseDouble(purchasePriceField.getText()),
+                        Money.parse(purchasePriceField.getText()),
                         Integer.parseInt(amountBoughtField.getText())
                 );
+                item.setSku(sku);
+                return item;
             }}
             return null;
         });
@@ -282,7 +329,11 @@ public class AdminView extends Application {
             Optional<InventoryItem> result = dialog.showAndWait();
             if (result.isPresent()) {
                 InventoryItem newItem = result.get();
-                manager.addItem(newItem);
+                // Another admin may have taken the SKU since it was checked.
+                if (!manager.addItem(newItem)) {
+                    warningLabel.setText("SKU already exists!");
+                    continue;
+                }
                 table.setItems(FXCollections.observableArrayList(manager.getAllItems()));
                 break;
             } else if (!result.isPresent() || warningLabel.getText().isEmpty()) {
@@ -339,10 +390,9 @@ public class AdminView extends Application {
                 InventoryItem selectedItem = itemComboBox.getValue();
                 if (selectedItem != null) {
                     try {
-                        double purchasePrice = Double.parseDouble(purchasePriceField.getText());
+                        long purchasePrice = Money.parse(purchasePriceField.getText());
                         int amountBought = Integer.parseInt(amountBoughtField.getText());
-                        selectedItem.addStock(amountBought, purchasePrice);
-                        manager.updateItem(selectedItem);
+                        manager.addStock(selectedItem, amountBought, purchasePrice);
                     } catch (NumberFormatException e) {
                         showAlert("Input Error", "Please enter valid numbers for purchase price and amount bought.");
                         return null;
@@ -384,7 +434,7 @@ public class AdminView extends Application {
 
         TextField nameField = new TextField(selectedItem.getName());
         TextField categoryField = new TextField(selectedItem.getCategory());
-        TextField priceField = new TextField(String.valueOf(selectedItem.getPrice()));
+        TextField priceField = new TextField(Money.toPlainString(selectedItem.getPrice()));
         TextField quantityField = new TextField(String.valueOf(selectedItem.getQuantity()));
         TextField supplierField = new TextField(selectedItem.getSupplier());
 
@@ -406,11 +456,10 @@ public class AdminView extends Application {
 
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == ButtonType.OK) {
-                    selectedItem.setName(nameField.getText());
-                    selectedItem.setCategory(categoryField.getText());
-                    selectedItem.setPrice(Double.parseDouble(priceField.getText()));
-                    selectedItem.setQuantity(Integer.parseInt(quantityField.getText()));
-                    selectedItem.setSupplier(supplierField.getText());
+                    long price = Money.parse(priceField.getText());
+                    int quantity = Integer.parseInt(quantityField.getText());
+                    manager.editItem(selectedItem, nameField.getText(), categoryField.getText(), price, quantity,
+                            supplierField.getText());
                     return selectedItem;
                 }
                 return null;
@@ -418,10 +467,7 @@ public class AdminView extends Application {
         });
 
         Optional<InventoryItem> result = dialog.showAndWait();
-        result.ifPresent(item -> {
-            manager.updateItem(item);
-            table.setItems(FXCollections.observableArrayList(manager.getAllItems()));
-        });
+        result.ifPresent(item -> table.setItems(FXCollections.observableArrayList(manager.getAllItems())));
     }
 
 
@@ -445,6 +491,7 @@ public class AdminView extends Application {
         tab.setContent(layout);
 
         refreshUserTable(userTable);
+        onChange(StoreContext.Change.USERS, () -> refreshUserTable(userTable));
     }
 
     private void setupUserTableColumns(TableView<User> table) {
@@ -534,12 +581,7 @@ public class AdminView extends Application {
         TableView<Customer> customerTable = new TableView<>();
         setupCustomerTableColumns(customerTable);
 
-        tab.setOnSelectionChanged(event -> {
-            if (tab.isSelected()) {
-                customerManager.loadCustomers();
-                refreshCustomerTable(customerTable);
-            }
-        });
+        onChange(StoreContext.Change.CUSTOMERS, () -> refreshCustomerTable(customerTable));
 
         Button addCustomerButton = new Button("Add Customer");
         addCustomerButton.setOnAction(e -> showAddCustomerDialog(customerTable));
@@ -587,10 +629,8 @@ public class AdminView extends Application {
         transactionTable.setItems(FXCollections.observableArrayList(customerTransactions));
 
 
-        double totalSpent = customerTransactions.stream()
-                .mapToDouble(Transaction::getTotalCost)
-                .sum();
-        Label totalSpentLabel = new Label("Total Spent: $" + String.format("%.2f", totalSpent));
+        long totalSpent = customerManager.getLifetimeSpend(customer.getId());
+        Label totalSpentLabel = new Label("Total Spent: " + Money.format(totalSpent));
 
         VBox layout = new VBox(10, totalSpentLabel, transactionTable);
         layout.setAlignment(Pos.CENTER);
@@ -603,8 +643,9 @@ public class AdminView extends Application {
         TableColumn<Transaction, Integer> idColumn = new TableColumn<>("Transaction ID");
         idColumn.setCellValueFactory(new PropertyValueFactory<>("transactionID"));
 
-        TableColumn<Transaction, Double> totalCostColumn = new TableColumn<>("Total Cost");
+        TableColumn<Transaction, Long> totalCostColumn = new TableColumn<>("Total Cost");
         totalCostColumn.setCellValueFactory(new PropertyValueFactory<>("totalCost"));
+        totalCostColumn.setCellFactory(MoneyCell.forTableColumn());
 
         TableColumn<Transaction, String> cashierColumn = new TableColumn<>("Cashier");
         cashierColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getCashier().getUsername()));
@@ -680,36 +721,80 @@ public class AdminView extends Application {
         TextField totalSpent = new TextField();
         totalSpent.setEditable(false);
 
-        itemComboBox.setOnAction(event -> {
+        // Leaving both dates empty shows the lifetime totals; a range is answered from the item's daily rollup.
+        DatePicker fromPicker = new DatePicker();
+        DatePicker toPicker = new DatePicker();
+        fromPicker.setPromptText("Lifetime");
+        toPicker.setPromptText("Lifetime");
+
+        LineChart<String, Number> profitChart = new LineChart<>(new CategoryAxis(), new NumberAxis());
+        profitChart.setTitle("Profit");
+        profitChart.setLegendVisible(false);
+        profitChart.setCreateSymbols(false);
+        profitChart.setAnimated(false);
+        profitChart.setPrefHeight(250);
+
+        Runnable refresh = () -> {
             InventoryItem selectedItem = itemComboBox.getValue();
-            if (selectedItem != null) {
+            if (selectedItem == null) {
+                return;
+            }
+            LocalDate from = fromPicker.getValue();
+            LocalDate to = toPicker.getValue();
+            if (from == null && to == null) {
 
                 int totalPurchased = selectedItem.getAmountBought();
-                double totalEarnedVal = selectedItem.getTotalEarned();
+                long totalEarnedVal = selectedItem.getTotalEarned();
                 int totalSold = selectedItem.getAmountSold();
-                double totalSpentVal = selectedItem.getTotalSpent();
-                double totalProfit = totalEarnedVal-totalSpentVal;
+                long totalSpentVal = selectedItem.getTotalSpent();
+                long totalProfit = totalEarnedVal-totalSpentVal;
 
                 totalPurchasedField.setText(String.valueOf(totalPurchased));
-                totalSpent.setText(String.valueOf(totalSpentVal));
+                totalSpent.setText(Money.toPlainString(totalSpentVal));
                 totalSoldField.setText(String.valueOf(totalSold));
-                totalEarned.setText(String.valueOf(totalEarnedVal));
-                totalProfitField.setText(String.format("%.2f", totalProfit));
+                totalEarned.setText(Money.toPlainString(totalEarnedVal));
+                totalProfitField.setText(Money.toPlainString(totalProfit));
+                profitChart.getData().clear();
+                return;
             }
-        });
+            if (from == null) {
+                from = to.minusYears(1);
+            }
+            if (to == null) {
+                to = LocalDate.now();
+            }
+            if (to.isBefore(from)) {
+                return;
+            }
+            DailyRollup.Totals totals = selectedItem.getDailyRollup().sum(from.toEpochDay(), to.toEpochDay());
+            totalPurchasedField.setText(String.valueOf(totals.getUnitsBought()));
+            totalSpent.setText(Money.toPlainString(totals.getCost()));
+            totalSoldField.setText(String.valueOf(totals.getUnitsSold()));
+            totalEarned.setText(Money.toPlainString(totals.getRevenue()));
+            totalProfitField.setText(Money.toPlainString(totals.getProfit()));
+            profitChart.getData().setAll(profitSeries(selectedItem.getDailyRollup(), from, to));
+        };
+        itemComboBox.setOnAction(event -> refresh.run());
+        fromPicker.setOnAction(event -> refresh.run());
+        toPicker.setOnAction(event -> refresh.run());
 
         grid.add(new Label("Item:"), 0, 0);
         grid.add(itemComboBox, 1, 0);
-        grid.add(new Label("Amount Purchased:"), 0, 1);
-        grid.add(totalPurchasedField, 1, 1);
-        grid.add(new Label("Total Spent:"), 0, 2);
-        grid.add(totalSpent, 1, 2);
-        grid.add(new Label("Amount Sold:"), 0, 3);
-        grid.add(totalSoldField, 1, 3);
-        grid.add(new Label("Total Earned:"), 0, 4);
-        grid.add(totalEarned, 1, 4);
-        grid.add(new Label("Total Profit:"), 0, 5);
-        grid.add(totalProfitField, 1, 5);
+        grid.add(new Label("From:"), 0, 1);
+        grid.add(fromPicker, 1, 1);
+        grid.add(new Label("To:"), 0, 2);
+        grid.add(toPicker, 1, 2);
+        grid.add(new Label("Amount Purchased:"), 0, 3);
+        grid.add(totalPurchasedField, 1, 3);
+        grid.add(new Label("Total Spent:"), 0, 4);
+        grid.add(totalSpent, 1, 4);
+        grid.add(new Label("Amount Sold:"), 0, 5);
+        grid.add(totalSoldField, 1, 5);
+        grid.add(new Label("Total Earned:"), 0, 6);
+        grid.add(totalEarned, 1, 6);
+        grid.add(new Label("Total Profit:"), 0, 7);
+        grid.add(totalProfitField, 1, 7);
+        grid.add(profitChart, 0, 8, 2, 1);
 
 
         dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
@@ -717,6 +802,23 @@ public class AdminView extends Application {
 
         dialog.showAndWait();
     }
+
+    // One point per day for ranges up to a year, one per week beyond that so long charts stay light.
+    private XYChart.Series<String, Number> profitSeries(DailyRollup rollup, LocalDate from, LocalDate to) {
+        long[] profit = rollup.dailyProfit(from.toEpochDay(), to.toEpochDay());
+        int bucket = profit.length > 366 ? 7 : 1;
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        for (int start = 0; start < profit.length; start += bucket) {
+            long sum = 0;
+            for (int i = start; i < Math.min(start + bucket, profit.length); i++) {
+                sum += profit[i];
+            }
+            // The chart plots currency units; only the plotted point leaves cents.
+            series.getData().add(new XYChart.Data<>(from.plusDays(start).toString(), sum / 100.0));
+        }
+        return series;
+    }
+
     private void showAddCustomerDialog(TableView<Customer> table) {
         Dialog<Customer> dialog = new Dialog<>();
         dialog.setTitle("Add New Customer");
@@ -843,26 +945,49 @@ public class AdminView extends Application {
 
 
     private void setupSalesReportTab(Tab tab) {
-        POSSystem posSystem = new POSSystem();
         TableView<Transaction> transactionTable = new TableView<>();
         setupTransactionTableColumns(transactionTable);
 
         Button dailyReportButton = new Button("Daily Report");
-        dailyReportButton.setOnAction(e -> showReportPopup("Daily Report", posSystem.createDailyReport(new Date())));
+        dailyReportButton.setOnAction(e -> showReportPopup("Daily Report", posSystem.getDailySales(new Date())));
 
         Button itemReportButton = new Button("Item Report");
         itemReportButton.setOnAction(e -> showItemReportPopup());
 
+        Button topSellersButton = new Button("Top Sellers");
+        topSellersButton.setOnAction(e -> showTopSellersPopup());
+
+        Button periodReportButton = new Button("Period Report");
+        periodReportButton.setOnAction(e -> showPeriodReportPopup());
+
+        Button endOfDayButton = new Button("End of Day");
+        endOfDayButton.setOnAction(e -> showEndOfDayDialog());
+
         Button monthlyReportButton = new Button("Monthly Report");
         monthlyReportButton.setOnAction(e -> {
             Calendar cal = Calendar.getInstance();
-            showReportPopup("Monthly Report", posSystem.createMonthlyReport(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)));
+            showReportPopup("Monthly Report", posSystem.getMonthlySales(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH)));
         });
 
         Button yearlyReportButton = new Button("Yearly Report");
         yearlyReportButton.setOnAction(e -> {
             Calendar cal = Calendar.getInstance();
-            showReportPopup("Yearly Report", posSystem.createYearlyReport(cal.get(Calendar.YEAR)));
+            showReportPopup("Yearly Report", posSystem.getYearlySales(cal.get(Calendar.YEAR)));
+        });
+
+        // Runs on the fork/join pool; the button stays disabled until the popup can be shown.
+        Button historyReportButton = new Button("Full History Report");
+        historyReportButton.setOnAction(e -> {
+            historyReportButton.setDisable(true);
+            posSystem.summarizeAllSales().whenComplete((summary, error) -> Platform.runLater(() -> {
+                historyReportButton.setDisable(false);
+                if (error != null) {
+                    error.printStackTrace();
+                    showAlert("Report Error", "The full history report could not be built.");
+                } else {
+                    showSummaryPopup("Full History Report", summary);
+                }
+            }));
         });
 
         Button expandButton = new Button("Expand");
@@ -878,17 +1003,305 @@ public class AdminView extends Application {
         );
 
 
-        transactionTable.setItems(FXCollections.observableArrayList(posSystem.getAllTransactions()));
+        TextField cashierFilterField = new TextField();
+        cashierFilterField.setPromptText("Cashier");
+        DatePicker fromFilterPicker = new DatePicker();
+        DatePicker toFilterPicker = new DatePicker();
+
+        Button filterButton = new Button("Filter");
+        filterButton.setOnAction(e -> {
+            LocalDate from = fromFilterPicker.getValue();
+            LocalDate to = toFilterPicker.getValue();
+            if (from != null && to != null && to.isBefore(from)) {
+                showAlert("Input Error", "Please choose a valid period.");
+                return;
+            }
+            transactionQuery = new TransactionQuery(from, to, cashierFilterField.getText(),
+                    transactionQuery.getSortKey(), transactionQuery.isDescending());
+            loadTransactions(transactionTable);
+        });
+
+        Button clearFilterButton = new Button("Clear");
+        clearFilterButton.setOnAction(e -> {
+            cashierFilterField.clear();
+            fromFilterPicker.setValue(null);
+            toFilterPicker.setValue(null);
+            filterButton.fire();
+        });
+
+        HBox filterBar = new HBox(10, new Label("Cashier:"), cashierFilterField, new Label("From:"), fromFilterPicker,
+                new Label("To:"), toFilterPicker, filterButton, clearFilterButton);
+        filterBar.setAlignment(Pos.CENTER);
+
+        // Sorting is done by the store, not the table; see loadTransactions.
+        transactionTable.setSortPolicy(table -> {
+            TransactionQuery.SortKey sortKey = TransactionQuery.SortKey.DATE;
+            boolean descending = false;
+            if (!table.getSortOrder().isEmpty()) {
+                TableColumn<Transaction, ?> column = table.getSortOrder().get(0);
+                sortKey = (TransactionQuery.SortKey) column.getUserData();
+                descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+            }
+            if (sortKey != transactionQuery.getSortKey() || descending != transactionQuery.isDescending()) {
+                transactionQuery = transactionQuery.sortedBy(sortKey, descending);
+                loadTransactions(table);
+            }
+            return true;
+        });
+
+        loadTransactions(transactionTable);
+        onChange(StoreContext.Change.TRANSACTIONS, () -> loadTransactions(transactionTable));
 
-        HBox buttonBar = new HBox(10, dailyReportButton, monthlyReportButton, yearlyReportButton, itemReportButton, expandButton);
+        HBox buttonBar = new HBox(10, dailyReportButton, monthlyReportButton, yearlyReportButton, historyReportButton, periodReportButton, endOfDayButton, itemReportButton, topSellersButton, expandButton);
         buttonBar.setAlignment(Pos.CENTER);
 
-        VBox layout = new VBox(10, transactionTable, buttonBar);
+        VBox layout = new VBox(10, filterBar, transactionTable, buttonBar);
         layout.setAlignment(Pos.CENTER);
 
         tab.setContent(layout);
     }
 
+    // The rows are a paged view of the store, so only the rows on screen are decoded. Filtering and any
+    // sort but by date read the store on the fork/join pool; a reload asked for meanwhile runs once that
+    // query is done, so a burst of sales costs at most one more.
+    private void loadTransactions(TableView<Transaction> table) {
+        if (transactionQueryRunning) {
+            transactionQueryStale = true;
+            return;
+        }
+        transactionQueryRunning = true;
+        TransactionQuery query = transactionQuery;
+        posSystem.queryTransactions(query).whenComplete((rows, error) -> Platform.runLater(() -> {
+            transactionQueryRunning = false;
+            if (error != null) {
+                error.printStackTrace();
+                showAlert("Report Error", "The transactions could not be loaded.");
+            } else if (query == transactionQuery) {
+                table.setItems(FXCollections.observableList(rows));
+            }
+            if (transactionQueryStale || query != transactionQuery) {
+                transactionQueryStale = false;
+                loadTransactions(table);
+            }
+        }));
+    }
+
+    private void showTopSellersPopup() {
+        Stage popupStage = new Stage();
+        popupStage.initModality(Modality.APPLICATION_MODAL);
+        popupStage.setTitle("Top Sellers");
+
+        LocalDate today = LocalDate.now();
+        DatePicker fromPicker = new DatePicker(today.withDayOfMonth(1));
+        DatePicker toPicker = new DatePicker(today);
+        ComboBox<Integer> countBox = new ComboBox<>(FXCollections.observableArrayList(10, 20, 50));
+        countBox.setValue(10);
+
+        TableView<TopSellers.Entry> table = new TableView<>();
+
+        TableColumn<TopSellers.Entry, Integer> rankColumn = new TableColumn<>("Rank");
+        rankColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getRank()));
+
+        TableColumn<TopSellers.Entry, String> itemColumn = new TableColumn<>("Item");
+        itemColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getKey()));
+
+        TableColumn<TopSellers.Entry, Long> unitsColumn = new TableColumn<>("Units Sold");
+        unitsColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getCount()));
+
+        // Non-zero only when the period had more distinct items than the report keeps counters for.
+        TableColumn<TopSellers.Entry, Long> errorColumn = new TableColumn<>("Possible Overcount");
+        errorColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getError()));
+
+        table.getColumns().addAll(rankColumn, itemColumn, unitsColumn, errorColumn);
+
+        // Reads the period's transactions on the fork/join pool; the button stays disabled until the rows are in.
+        Button showButton = new Button("Show");
+        showButton.setOnAction(e -> {
+            LocalDate from = fromPicker.getValue();
+            LocalDate to = toPicker.getValue();
+            if (from == null || to == null || to.isBefore(from)) {
+                showAlert("Input Error", "Please choose a valid period.");
+                return;
+            }
+            int count = countBox.getValue();
+            showButton.setDisable(true);
+            CompletableFuture.supplyAsync(() -> posSystem.getTopSellers(from, to, count))
+                    .whenComplete((topSellers, error) -> Platform.runLater(() -> {
+                        showButton.setDisable(false);
+                        if (error != null) {
+                            error.printStackTrace();
+                            showAlert("Report Error", "The top sellers could not be loaded.");
+                        } else {
+                            table.setItems(FXCollections.observableArrayList(topSellers));
+                        }
+                    }));
+        });
+
+        HBox periodBar = new HBox(10, new Label("From:"), fromPicker, new Label("To:"), toPicker, new Label("Top:"), countBox, showButton);
+        periodBar.setAlignment(Pos.CENTER);
+
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(event -> popupStage.close());
+
+        VBox layout = new VBox(10, periodBar, table, closeButton);
+        layout.setPadding(new Insets(10));
+
+        showButton.fire();
+        popupStage.setScene(new Scene(layout));
+        popupStage.showAndWait();
+    }
+
+    private void showSummaryPopup(String title, SalesSummary summary) {
+        Stage popupStage = new Stage();
+        popupStage.initModality(Modality.APPLICATION_MODAL);
+        popupStage.setTitle(title);
+
+        VBox layout = new VBox(10, summaryView(summary));
+        layout.setPadding(new Insets(10));
+
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(event -> popupStage.close());
+        layout.getChildren().add(closeButton);
+
+        popupStage.setScene(new Scene(layout));
+        popupStage.showAndWait();
+    }
+
+    // Closes a past day and shows its Z-report; a day that is already closed just shows the stored report.
+    private void showEndOfDayDialog() {
+        Dialog<LocalDate> dialog = new Dialog<>();
+        dialog.setTitle("End of Day");
+        DatePicker datePicker = new DatePicker(LocalDate.now().minusDays(1));
+        Label statusLabel = new Label();
+        Runnable updateStatus = () -> statusLabel.setText(datePicker.getValue() != null && posSystem.isDayClosed(datePicker.getValue())
+                ? "Already closed" : "Open");
+        datePicker.setOnAction(e -> updateStatus.run());
+        updateStatus.run();
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+        grid.add(new Label("Day:"), 0, 0);
+        grid.add(datePicker, 1, 0);
+        grid.add(statusLabel, 1, 1);
+
+        ButtonType closeDayButtonType = new ButtonType("Close Day", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(closeDayButtonType, ButtonType.CANCEL);
+        dialog.getDialogPane().setContent(grid);
+        dialog.setResultConverter(dialogButton -> dialogButton == closeDayButtonType ? datePicker.getValue() : null);
+
+        // The day is read on the fork/join pool; the Z-report pops up once it is closed.
+        dialog.showAndWait().ifPresent(day -> CompletableFuture.supplyAsync(() -> posSystem.closeDay(day))
+                .whenComplete((summary, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                        showAlert("Report Error", "The day could not be closed.");
+                    } else if (summary == null) {
+                        showAlert("End of Day", "Only days before today can be closed.");
+                    } else {
+                        showSummaryPopup("Z-Report " + day, summary);
+                    }
+                })));
+    }
+
+    // Browses day, month and year summaries; closed periods come back from the report cache after the first look.
+    private void showPeriodReportPopup() {
+        Stage popupStage = new Stage();
+        popupStage.initModality(Modality.APPLICATION_MODAL);
+        popupStage.setTitle("Period Report");
+
+        ComboBox<ReportCache.PeriodType> typeBox = new ComboBox<>(FXCollections.observableArrayList(ReportCache.PeriodType.values()));
+        typeBox.setValue(ReportCache.PeriodType.DAY);
+        DatePicker datePicker = new DatePicker(LocalDate.now());
+        Button previousButton = new Button("<");
+        Button nextButton = new Button(">");
+        Label periodLabel = new Label();
+        Label statisticsLabel = new Label();
+
+        VBox content = new VBox();
+        Runnable load = () -> {
+            if (datePicker.getValue() == null) {
+                return;
+            }
+            ReportCache.Period period = ReportCache.Period.of(typeBox.getValue(), datePicker.getValue());
+            periodLabel.setText(period.toString() + " (loading)");
+            posSystem.summarizePeriod(period).whenComplete((summary, error) -> Platform.runLater(() -> {
+                if (!period.equals(ReportCache.Period.of(typeBox.getValue(), datePicker.getValue()))) {
+                    return;
+                }
+                if (error != null) {
+                    error.printStackTrace();
+                    periodLabel.setText(period + " (failed)");
+                    return;
+                }
+                periodLabel.setText(period.toString());
+                content.getChildren().setAll(summaryView(summary));
+                statisticsLabel.setText("Cache: " + posSystem.getReportCacheStatistics());
+            }));
+        };
+        typeBox.setOnAction(e -> load.run());
+        datePicker.setOnAction(e -> load.run());
+        previousButton.setOnAction(e -> datePicker.setValue(
+                ReportCache.Period.of(typeBox.getValue(), datePicker.getValue()).previous().getStart()));
+        nextButton.setOnAction(e -> datePicker.setValue(
+                ReportCache.Period.of(typeBox.getValue(), datePicker.getValue()).next().getStart()));
+
+        HBox periodBar = new HBox(10, typeBox, previousButton, datePicker, nextButton, periodLabel);
+        periodBar.setAlignment(Pos.CENTER_LEFT);
+
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(event -> popupStage.close());
+
+        VBox layout = new VBox(10, periodBar, content, statisticsLabel, closeButton);
+        layout.setPadding(new Insets(10));
+
+        load.run();
+        popupStage.setScene(new Scene(layout));
+        popupStage.showAndWait();
+    }
+
+    private VBox summaryView(SalesSummary summary) {
+        VBox layout = new VBox(10);
+        layout.getChildren().add(new Label("Transactions: " + summary.getCount()));
+        layout.getChildren().add(new Label("Total Earnings: " + Money.format(summary.getGross())));
+        layout.getChildren().add(new Label("Total Discount: " + summary.getDiscount()));
+        layout.getChildren().add(new Label("Loyalty Points Issued: " + summary.getLoyaltyPoints()));
+        layout.getChildren().add(new Label("Smallest / Average / Largest Sale: "
+                + Money.format(summary.getMinimum()) + " / "
+                + Money.format(summary.getAverage()) + " / "
+                + Money.format(summary.getMaximum())));
+
+        TabPane groups = new TabPane(
+                summaryGroupTab("By Cashier", "Cashier", "Transactions", summary.getByCashier()),
+                summaryGroupTab("By Item", "Item", "Sales", summary.getByItem()),
+                summaryGroupTab("By Category", "Category", "Sales", summary.getByCategory()));
+        groups.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        layout.getChildren().add(groups);
+        return layout;
+    }
+
+    private Tab summaryGroupTab(String title, String keyName, String countName, Map<String, SalesSummary.Totals> totals) {
+        TableView<Map.Entry<String, SalesSummary.Totals>> table = new TableView<>();
+
+        TableColumn<Map.Entry<String, SalesSummary.Totals>, String> keyColumn = new TableColumn<>(keyName);
+        keyColumn.setCellValueFactory(cellData -> new ReadOnlyStringWrapper(cellData.getValue().getKey()));
+
+        TableColumn<Map.Entry<String, SalesSummary.Totals>, Long> countColumn = new TableColumn<>(countName);
+        countColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getValue().getCount()));
+
+        TableColumn<Map.Entry<String, SalesSummary.Totals>, Long> unitsColumn = new TableColumn<>("Units");
+        unitsColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getValue().getUnits()));
+
+        TableColumn<Map.Entry<String, SalesSummary.Totals>, Long> revenueColumn = new TableColumn<>("Earnings");
+        revenueColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getValue().getRevenue()));
+        revenueColumn.setCellFactory(MoneyCell.forTableColumn());
+
+        table.getColumns().addAll(keyColumn, countColumn, unitsColumn, revenueColumn);
+        table.setItems(FXCollections.observableArrayList(totals.entrySet()));
+        return new Tab(title, table);
+    }
+
     private void showTransactionDetailsPopup(Transaction transaction) {
         Stage detailsStage = new Stage();
         detailsStage.initModality(Modality.APPLICATION_MODAL);
@@ -901,7 +1314,10 @@ public class AdminView extends Application {
 
         layout.getChildren().add(new Label("Transaction ID: " + transaction.getTransactionID()));
         layout.getChildren().add(new Label("Date: " + transaction.getDate()));
-        layout.getChildren().add(new Label("Total Cost: $" + transaction.getTotalCost()));
+        if (transaction.isLate()) {
+            layout.getChildren().add(new Label("Sold offline: " + transaction.getSaleDate()));
+        }
+        layout.getChildren().add(new Label("Total Cost: " + Money.format(transaction.getTotalCost())));
         layout.getChildren().add(new Label("Discount: " + transaction.getDiscount()));
 
 
@@ -931,36 +1347,26 @@ public class AdminView extends Application {
         quantityColumn.setCellValueFactory(new PropertyValueFactory<>("amount"));
 
 
-        TableColumn<SaleItem, Double> priceColumn = new TableColumn<>("Price");
-        priceColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().item.getPrice()));
+        TableColumn<SaleItem, Long> priceColumn = new TableColumn<>("Price");
+        priceColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getPrice()));
+        priceColumn.setCellFactory(MoneyCell.forTableColumn());
 
 
-        TableColumn<SaleItem, Double> subtotalColumn = new TableColumn<>("Subtotal");
-        subtotalColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(
-                cellData.getValue().getAmount() * cellData.getValue().item.getPrice()
-        ));
+        TableColumn<SaleItem, Long> subtotalColumn = new TableColumn<>("Subtotal");
+        subtotalColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getLineTotal()));
+        subtotalColumn.setCellFactory(MoneyCell.forTableColumn());
 
         table.getColumns().addAll(nameColumn, quantityColumn, priceColumn, subtotalColumn);
     }
 
-    public void showReportPopup(String title, List<Transaction> transactions) {
+    // The per-cashier totals come from POSSystem's running sales counters, so no transactions are read here.
+    public void showReportPopup(String title, Map<String, SalesAggregates.Counter> cashierSales) {
 
         Stage popupStage = new Stage();
         popupStage.initModality(Modality.APPLICATION_MODAL);
         popupStage.setTitle(title);
 
 
-        Map<String, Double> cashierEarnings = new HashMap<>();
-        Map<String, Integer> cashierTransactions = new HashMap<>();
-
-
-        for (Transaction transaction : transactions) {
-            String cashierName = transaction.getCashier().getUsername();
-            cashierEarnings.merge(cashierName, transaction.getTotalCost(), Double::sum);
-            cashierTransactions.merge(cashierName, 1, Integer::sum);
-        }
-
-
         TableView<CashierReport> table = new TableView<>();
         TableColumn<CashierReport, String> nameColumn = new TableColumn<>("Cashier");
         TableColumn<CashierReport, Integer> transactionsColumn = new TableColumn<>("Transactions");
@@ -975,12 +1381,11 @@ public class AdminView extends Application {
         table.getColumns().addAll(nameColumn, transactionsColumn, earningsColumn);
 
 
-        DecimalFormat currencyFormat = new DecimalFormat("$#.00");
-        for (String cashier : cashierEarnings.keySet()) {
+        for (Map.Entry<String, SalesAggregates.Counter> entry : cashierSales.entrySet()) {
             CashierReport report = new CashierReport(
-                    cashier,
-                    cashierTransactions.get(cashier),
-                    currencyFormat.format(cashierEarnings.get(cashier))
+                    entry.getKey(),
+                    entry.getValue().getCount(),
+                    Money.format(entry.getValue().getGross())
             );
             table.getItems().add(report);
         }
@@ -1047,21 +1452,27 @@ public class AdminView extends Application {
 
         TableColumn<Transaction, Integer> idCol = new TableColumn<>("Transaction ID");
         idCol.setCellValueFactory(new PropertyValueFactory<>("transactionID"));
+        idCol.setUserData(TransactionQuery.SortKey.ID);
         idCol.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
         TableColumn<Transaction, String> dateCol = new TableColumn<>("Date");
         dateCol.setCellValueFactory(new PropertyValueFactory<>("date"));
+        dateCol.setUserData(TransactionQuery.SortKey.DATE);
         dateCol.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
-        TableColumn<Transaction, Double> totalCostCol = new TableColumn<>("Total Cost");
+        TableColumn<Transaction, Long> totalCostCol = new TableColumn<>("Total Cost");
         totalCostCol.setCellValueFactory(new PropertyValueFactory<>("totalCost"));
+        totalCostCol.setCellFactory(MoneyCell.forTableColumn());
+        totalCostCol.setUserData(TransactionQuery.SortKey.TOTAL);
         totalCostCol.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
 
         TableColumn<Transaction, String> cashierCol = new TableColumn<>("Cashier Name");
         cashierCol.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getCashier().getUsername()));
+        cashierCol.setUserData(TransactionQuery.SortKey.CASHIER);
         cashierCol.prefWidthProperty().bind(table.widthProperty().multiply(columnMultiplier));
 
+        // Each column's user data is the store sort key it stands for.
         table.getColumns().addAll(idCol, dateCol, cashierCol, totalCostCol);
     }
 
@@ -1,8 +1,8 @@
 public class AuthController {
     private UserManager userManager;
 
-    public AuthController() {
-        userManager = new UserManager();
+    public AuthController(UserManager userManager) {
+        this.userManager = userManager;
     }
 
     public User login(String username, String password) {
@@ -18,11 +18,22 @@ import javafx.util.converter.IntegerStringConverter;
 import javafx.util.converter.NumberStringConverter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class CashierView extends Application {
+    private static final long SEARCH_DELAY_MILLIS = 150;
+
     private TableView<InventoryItem> inventoryTable;
     private TableView<SaleItem> cartTable;
     private TextField searchField, customerIdField;
@@ -30,37 +41,49 @@ public class CashierView extends Application {
     private Button applyLoyaltyPointsButton, loadCustomerButton;
     private ObservableList<InventoryItem> inventoryItems;
     private ObservableList<SaleItem> cartItems;
-    private double totalCost = 0.0;
+    // In cents; the discount is in whole units, as loyalty points buy it.
+    private long totalCost = 0;
+    private final StringBuilder totalCostText = new StringBuilder(32);
 
     private Button newCustomerButton;
     private int discount = 0;
+    private int pointsRedeemed = 0;
 
     Button finishTransactionButton;
 
-    private InventoryManager inventoryManager;
-    private CustomerManager customerManager;
-    private POSSystem posSystem;
-    private POSController posController;
+    private StoreContext storeContext;
+    private CheckoutService checkoutService;
     private Customer currentCustomer;
     private User currentCashier;
     private LoginView loginView;
     Label customerInfoLabel;
     AdminView adminView;
 
-    public CashierView(User user) {
+    private BiConsumer<StoreContext.Change, Set<String>> storeListener;
+
+    // Searches run here, one at a time, so typing never waits on them. The index is only touched by this
+    // thread; a search is applied only if nothing was asked for after it.
+    private final ScheduledExecutorService searchExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "item-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private ScheduledFuture<?> pendingSearch;
+    private ItemSearchIndex searchIndex;
+    private ItemSearchIndex shownIndex;
+
+    public CashierView(User user, StoreContext storeContext) {
         this.currentCashier = user;
-        loginView = new LoginView(new UserManager(), new POSController(inventoryManager), new AuthController());
+        this.storeContext = storeContext;
     }
 
     @Override
     public void start(Stage primaryStage) {
-        adminView = new AdminView(new UserManager());
-        inventoryManager = new InventoryManager();
-        customerManager = new CustomerManager();
-        posSystem = new POSSystem();
-        posController = new POSController(inventoryManager);
+        adminView = new AdminView(storeContext);
+        checkoutService = storeContext.getCheckoutService();
 
-        inventoryItems = FXCollections.observableArrayList(inventoryManager.getAllItems());
+        inventoryItems = FXCollections.observableArrayList();
         cartItems = FXCollections.observableArrayList();
         newCustomerButton = new Button("New Customer");
         newCustomerButton.setOnAction(e -> showNewCustomerDialog());
@@ -69,11 +92,25 @@ public class CashierView extends Application {
 
         searchField = new TextField();
         searchField.setPromptText("Search for items...");
+        // Waits until typing pauses, so a burst of keys runs one search.
         searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            inventoryTable.setItems(FXCollections.observableArrayList(
-                    inventoryManager.getAllItems().stream()
-                            .filter(item -> item.getName().toLowerCase().contains(newValue.toLowerCase()))
-                            .collect(Collectors.toList())));
+            long generation = searchGeneration.incrementAndGet();
+            if (pendingSearch != null) {
+                pendingSearch.cancel(false);
+            }
+            pendingSearch = searchExecutor.schedule(() -> {
+                if (searchIndex != null && generation == searchGeneration.get()) {
+                    showSearchResult(generation, searchIndex, searchIndex.search(newValue));
+                }
+            }, SEARCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        });
+        // Barcode scanners type the code followed by Enter.
+        searchField.setOnAction(e -> {
+            InventoryItem scannedItem = checkoutService.findItemBySku(searchField.getText());
+            if (scannedItem != null) {
+                addOneToCart(scannedItem);
+                searchField.clear();
+            }
         });
 
         Button logoutButton = new Button("Logout");
@@ -82,6 +119,7 @@ public class CashierView extends Application {
             stage.close();
             Stage loginStage = new Stage();
             try {
+                loginView = new LoginView(storeContext);
                 loginView.start(loginStage);
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -103,7 +141,7 @@ public class CashierView extends Application {
 
         totalCostLabel = new Label("Total Cost: $0.00");
         customerIdField = new TextField();
-        customerIdField.setPromptText("Enter customer ID");
+        customerIdField.setPromptText("Enter customer ID or phone");
         loadCustomerButton = new Button("Load");
         loadCustomerButton.setOnAction(e -> loadCustomerData());
         loyaltyPointsLabel = new Label("Loyalty Points: 0");
@@ -124,6 +162,28 @@ public class CashierView extends Application {
         root.setCenter(splitPane);
         root.setBottom(transactionPanel);
 
+        // Stock and loyalty points change under the open screen, through this lane's sales and everyone else's.
+        storeListener = (change, skus) -> {
+            Runnable refresh;
+            if (change == StoreContext.Change.INVENTORY) {
+                refresh = skus == null ? this::refreshInventoryTable : () -> refreshStock(skus);
+            } else if (change == StoreContext.Change.CUSTOMERS) {
+                refresh = this::refreshCustomerData;
+            } else {
+                return;
+            }
+            if (Platform.isFxApplicationThread()) {
+                refresh.run();
+            } else {
+                Platform.runLater(refresh);
+            }
+        };
+        storeContext.addListener(storeListener);
+        primaryStage.setOnHidden(e -> {
+            storeContext.removeListener(storeListener);
+            searchExecutor.shutdownNow();
+        });
+
         Scene scene = new Scene(root, 800, 600);
         primaryStage.setScene(scene);
         adminView.applySettings(scene);
@@ -140,8 +200,9 @@ public class CashierView extends Application {
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         nameColumn.prefWidthProperty().bind(inventoryTable.widthProperty().multiply(columnMultiplier));
 
-        TableColumn<InventoryItem, Double> priceColumn = new TableColumn<>("Price");
+        TableColumn<InventoryItem, Long> priceColumn = new TableColumn<>("Price");
         priceColumn.setCellValueFactory(new PropertyValueFactory<>("price"));
+        priceColumn.setCellFactory(MoneyCell.forTableColumn());
         priceColumn.prefWidthProperty().bind(inventoryTable.widthProperty().multiply(columnMultiplier));
 
         TableColumn<InventoryItem, Integer> quantityColumn = new TableColumn<>("Quantity");
@@ -154,19 +215,7 @@ public class CashierView extends Application {
             private final Button addButton = new Button("+");
 
             {
-                addButton.setOnAction(e -> {
-                    InventoryItem inventoryItem = getTableView().getItems().get(getIndex());
-                    SaleItem saleItem = findSaleItemInCart(inventoryItem)
-                            .orElse(new SaleItem(inventoryItem, 0));
-                    int newQuantity = saleItem.getAmount() + 1;
-                    if (newQuantity <= inventoryItem.getQuantity()) {
-                        updateCartWithItem(inventoryItem, newQuantity);
-                        refreshTotalCost();
-                        cartTable.refresh();
-                    } else {
-                        showAlert("Stock Limit", "Cannot add more than available stock.");
-                    }
-                });
+                addButton.setOnAction(e -> addOneToCart(getTableView().getItems().get(getIndex())));
 
             }
 
@@ -179,14 +228,114 @@ public class CashierView extends Application {
         });
 
         inventoryTable.getColumns().addAll(nameColumn, priceColumn, quantityColumn, addActionColumn);
+        inventoryTable.setItems(inventoryItems);
         refreshInventoryTable();
     }
 
+    private void addOneToCart(InventoryItem inventoryItem) {
+        SaleItem saleItem = findSaleItemInCart(inventoryItem)
+                .orElse(new SaleItem(inventoryItem, 0));
+        int newQuantity = saleItem.getAmount() + 1;
+        if (newQuantity <= inventoryItem.getQuantity()) {
+            updateCartWithItem(inventoryItem, newQuantity);
+            refreshTotalCost();
+            cartTable.refresh();
+        } else {
+            showAlert("Stock Limit", "Cannot add more than available stock.");
+        }
+    }
+
+    // Fetches the items and rebuilds the search index on the search thread, then shows the in-stock items
+    // that match the current search.
     private void refreshInventoryTable() {
-        inventoryItems.setAll(inventoryManager.getAllItems().stream()
-                .filter(item -> item.getQuantity() > 0)
-                .collect(Collectors.toList()));
-        inventoryTable.setItems(inventoryItems);
+        long generation = searchGeneration.incrementAndGet();
+        String query = searchField.getText();
+        searchExecutor.execute(() -> {
+            searchIndex = new ItemSearchIndex(checkoutService.getAllItems());
+            showSearchResult(generation, searchIndex, searchIndex.search(query));
+        });
+    }
+
+    // Fetches only the items whose stock changed and updates their index entries on the search thread, then
+    // their rows: a row is replaced, dropped once the item is out of stock, or put back in catalog order when
+    // it is in stock again and matches the search. An item the index does not know as it is (new, removed
+    // or renamed) makes it a full refresh.
+    private void refreshStock(Set<String> skus) {
+        long generation = searchGeneration.get();
+        String query = searchField.getText();
+        searchExecutor.execute(() -> {
+            ItemSearchIndex index = searchIndex;
+            if (index == null) {
+                return;
+            }
+            List<InventoryItem> changed = new ArrayList<>(skus.size());
+            boolean[] shown = new boolean[skus.size()];
+            for (String sku : skus) {
+                InventoryItem item = checkoutService.findItemBySku(sku);
+                if (item == null || !index.update(item)) {
+                    Platform.runLater(this::refreshInventoryTable);
+                    return;
+                }
+                shown[changed.size()] = index.shows(item, query);
+                changed.add(item);
+            }
+            Platform.runLater(() -> showStockChanges(generation, index, changed, shown));
+        });
+    }
+
+    private void showStockChanges(long generation, ItemSearchIndex index, List<InventoryItem> changed,
+                                  boolean[] shown) {
+        // A newer search or refresh shows the updated index anyway.
+        if (generation != searchGeneration.get() || index != shownIndex) {
+            return;
+        }
+        for (int i = 0; i < changed.size(); i++) {
+            InventoryItem item = changed.get(i);
+            int position = index.positionOf(item.getSku());
+            int row = 0;
+            while (row < inventoryItems.size() && index.positionOf(inventoryItems.get(row).getSku()) < position) {
+                row++;
+            }
+            boolean inTable = row < inventoryItems.size() && index.positionOf(inventoryItems.get(row).getSku()) == position;
+            if (inTable && shown[i]) {
+                inventoryItems.set(row, item);
+            } else if (inTable) {
+                inventoryItems.remove(row);
+            } else if (shown[i]) {
+                inventoryItems.add(row, item);
+            }
+        }
+    }
+
+    // A search that only drops rows from what is shown is applied as one removal, so the rows that stay
+    // keep their cells and selection. Anything else, or a result from a newly loaded index (quantities may
+    // have changed), replaces the rows in one change.
+    private void showSearchResult(long generation, ItemSearchIndex index, List<InventoryItem> result) {
+        Platform.runLater(() -> {
+            if (generation != searchGeneration.get()) {
+                return;
+            }
+            if (index == shownIndex && isSubsequence(result, inventoryItems)) {
+                if (result.size() < inventoryItems.size()) {
+                    Set<InventoryItem> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+                    kept.addAll(result);
+                    inventoryItems.retainAll(kept);
+                }
+            } else {
+                inventoryItems.setAll(result);
+                shownIndex = index;
+            }
+        });
+    }
+
+    private static boolean isSubsequence(List<InventoryItem> part, List<InventoryItem> whole) {
+        int next = 0;
+        for (InventoryItem item : whole) {
+            if (next < part.size() && part.get(next) == item) {
+                next++;
+            }
+        }
+        return next == part.size();
     }
 
 
@@ -198,13 +347,15 @@ public class CashierView extends Application {
         itemNameColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getItem().getName()));
         itemNameColumn.prefWidthProperty().bind(inventoryTable.widthProperty().multiply(columnMultiplier));
 
-        TableColumn<SaleItem, Double> itemPriceColumn = new TableColumn<>("Price");
+        TableColumn<SaleItem, Long> itemPriceColumn = new TableColumn<>("Price");
         itemPriceColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getItem().getPrice()));
+        itemPriceColumn.setCellFactory(MoneyCell.forTableColumn());
         itemPriceColumn.prefWidthProperty().bind(inventoryTable.widthProperty().multiply(columnMultiplier));
 
-        TableColumn<SaleItem, Double> totalCostColumn = new TableColumn<>("Total Cost");
+        TableColumn<SaleItem, Long> totalCostColumn = new TableColumn<>("Total Cost");
         totalCostColumn.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(
-                cellData.getValue().getAmount() * cellData.getValue().getItem().getPrice()));
+                Money.times(cellData.getValue().getItem().getPrice(), cellData.getValue().getAmount())));
+        totalCostColumn.setCellFactory(MoneyCell.forTableColumn());
         totalCostColumn.prefWidthProperty().bind(inventoryTable.widthProperty().multiply(columnMultiplier));
 
         TableColumn<SaleItem, Void> removeActionColumn = new TableColumn<>("Remove");
@@ -259,20 +410,37 @@ public class CashierView extends Application {
 
 
     private void refreshTotalCost() {
-        totalCost = cartItems.stream()
-                .mapToDouble(saleItem -> saleItem.getAmount() * saleItem.getItem().getPrice())
-                .sum() - discount;
-        totalCostLabel.setText("Total Cost: $" + String.format("%.2f", totalCost));
+        long cents = -Money.ofUnits(discount);
+        for (SaleItem saleItem : cartItems) {
+            cents += Money.times(saleItem.getItem().getPrice(), saleItem.getAmount());
+        }
+        totalCost = cents;
+        totalCostText.setLength(0);
+        totalCostLabel.setText(Money.appendWithSymbol(totalCostText.append("Total Cost: "), totalCost).toString());
     }
 
 
     private void loadCustomerData() {
         customerInfoLabel.setText("");
+        // Points redeemed so far belong to the previous customer.
+        if (pointsRedeemed > 0) {
+            discount -= pointsRedeemed;
+            pointsRedeemed = 0;
+            refreshTotalCost();
+        }
         String customerId = customerIdField.getText();
         if (customerId == null || customerId.isEmpty() || customerId.equals(" ")){
-            currentCustomer = customerManager.findCustomer(0);
+            currentCustomer = checkoutService.findCustomer(0);
         }else{
-            currentCustomer = customerManager.findCustomer(Integer.parseInt(customerId));
+            currentCustomer = null;
+            try {
+                currentCustomer = checkoutService.findCustomer(Integer.parseInt(customerId.trim()));
+            } catch (NumberFormatException e) {
+                // Not an ID, try it as a phone number below.
+            }
+            if (currentCustomer == null) {
+                currentCustomer = checkoutService.findCustomerByPhone(customerId);
+            }
         }
         if (currentCustomer != null) {
             loyaltyPointsLabel.setText("Loyalty Points: " + currentCustomer.getLoyaltyPoints());
@@ -283,12 +451,25 @@ public class CashierView extends Application {
 
     }
 
+    // Shows the loaded customer's balance as the store has it now, less the points this sale redeems.
+    private void refreshCustomerData() {
+        if (currentCustomer == null) {
+            return;
+        }
+        Customer latest = checkoutService.findCustomer(currentCustomer.getId());
+        if (latest != null) {
+            currentCustomer = latest;
+            loyaltyPointsLabel.setText("Loyalty Points: " + (currentCustomer.getLoyaltyPoints() - pointsRedeemed));
+        }
+    }
+
+    // The points are only taken off the customer when the sale goes through, as part of the checkout.
     private void applyLoyaltyPoints() {
-        if (currentCustomer != null && currentCustomer.getLoyaltyPoints() >= 1000 && totalCost + discount >= 1000) {
-            currentCustomer.setLoyaltyPoints(currentCustomer.getLoyaltyPoints() - 1000);
+        if (currentCustomer != null && currentCustomer.getLoyaltyPoints() - pointsRedeemed >= 1000 && totalCost + Money.ofUnits(discount) >= Money.ofUnits(1000)) {
+            pointsRedeemed += 1000;
             discount += 1000;
             refreshTotalCost();
-            loyaltyPointsLabel.setText("Loyalty Points: " + currentCustomer.getLoyaltyPoints());
+            loyaltyPointsLabel.setText("Loyalty Points: " + (currentCustomer.getLoyaltyPoints() - pointsRedeemed));
         } else {
             showAlert("Loyalty Points Error", "Insufficient loyalty points or total cost.");
         }
@@ -323,8 +504,8 @@ public class CashierView extends Application {
         transactionPanel.setPadding(new Insets(10, 0, 10, 0));
         return transactionPanel;
     }
-    private void showPaymentDialog(double totalCost, List<SaleItem> saleItems) {
-        Dialog<Pair<Double, Double>> dialog = new Dialog<>();
+    private void showPaymentDialog(long totalCost, List<SaleItem> saleItems) {
+        Dialog<Pair<Long, Long>> dialog = new Dialog<>();
         dialog.setTitle("Payment");
 
 
@@ -357,14 +538,14 @@ public class CashierView extends Application {
         amountGivenField.textProperty().addListener((observable, oldValue, newValue) -> {
             if (!newValue.trim().isEmpty()) {
                 try {
-                    double amountGiven = Double.parseDouble(newValue.trim());
-                    double change = amountGiven - totalCost;
+                    long amountGiven = Money.parse(newValue);
+                    long change = amountGiven - totalCost;
                     if (change < 0) {
                         confirmButton.setDisable(true);
                         changeLabel.setText("Insufficient amount!");
                     } else {
                         confirmButton.setDisable(false);
-                        changeLabel.setText(String.format("Change: $%.2f", change));
+                        changeLabel.setText("Change: " + Money.format(change));
                     }
                 } catch (NumberFormatException e) {
                     confirmButton.setDisable(true);
@@ -375,58 +556,51 @@ public class CashierView extends Application {
 
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == confirmButtonType) {
-                double amountGiven = Double.parseDouble(amountGivenField.getText().trim());
-                double change = amountGiven - totalCost;
+                long amountGiven = Money.parse(amountGivenField.getText());
+                long change = amountGiven - totalCost;
                 return new Pair<>(amountGiven, change);
             }
             return null;
         });
 
-        Optional<Pair<Double, Double>> result = dialog.showAndWait();
+        Optional<Pair<Long, Long>> result = dialog.showAndWait();
         result.ifPresent(paymentResult -> finalizeSale(saleItems, totalCost, paymentResult.getValue()));
     }
 
-    private void finalizeSale(List<SaleItem> saleItems, double totalCost, double change) {
-
-        posController.processTransaction(new ArrayList<>(saleItems), currentCashier, currentCustomer.getId(), totalCost, discount);
-
-
-        saleItems.forEach(saleItem -> inventoryManager.sellItem(saleItem.getItem(), saleItem.getAmount()));
+    private void finalizeSale(List<SaleItem> saleItems, long totalCost, long change) {
 
+        int customerId = currentCustomer != null ? currentCustomer.getId() : 0;
+        CheckoutService.CheckoutStatus status = checkoutService.checkout(currentCashier, customerId, saleItems,
+                totalCost, discount, pointsRedeemed);
+        if (status == CheckoutService.CheckoutStatus.OUT_OF_STOCK) {
+            showAlert("Stock Limit", "Some items are no longer in stock. Please review the cart.");
+            return;
+        }
+        if (status == CheckoutService.CheckoutStatus.FAILED) {
+            showAlert("Transaction Error", "The sale could not be recorded. Please try again.");
+            return;
+        }
 
-        if (currentCustomer != null) {
-            int loyaltyPointsEarned = (int) (totalCost * 0.1);
-            currentCustomer.addLoyaltyPoints(loyaltyPointsEarned);
-            customerManager.updateCustomer(currentCustomer);
+        resetSale();
+        // The local store reports its stock changes; a remote one does not, so the items sold are fetched again.
+        if (checkoutService != storeContext.getLocalCheckoutService()) {
+            refreshStock(saleItems.stream().map(saleItem -> saleItem.getItem().getSku()).collect(Collectors.toSet()));
         }
+        showAlert("Transaction Completed", "The transaction has been processed successfully.");
+        searchField.requestFocus();
+    }
 
+    // Readies the screen for the next customer in place; the inventory table follows the store's changes.
+    private void resetSale() {
         cartItems.clear();
-        totalCost = 0.0;
-        totalCostLabel.setText("Total Cost: $0.00");
+        discount = 0;
+        pointsRedeemed = 0;
+        currentCustomer = null;
+        refreshTotalCost();
         customerIdField.clear();
+        customerInfoLabel.setText("");
         loyaltyPointsLabel.setText("Loyalty Points: 0");
-        cartTable.setItems(FXCollections.observableArrayList(cartItems));
-        inventoryTable.setItems(FXCollections.observableArrayList(inventoryManager.getAllItems()));
-        showAlert("Transaction Completed", "The transaction has been processed successfully.");
-        reloadScene();
-    }
-
-    private void reloadScene() {
-
-        CashierView cashierView = new CashierView(currentCashier);
-
-        Stage stage = (Stage) searchField.getScene().getWindow();
-
-        stage.close();
-
-        Platform.runLater(() -> {
-            try {
-                Stage newStage = new Stage();
-                cashierView.start(newStage);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        searchField.clear();
     }
 
     private Optional<SaleItem> findSaleItemInCart(InventoryItem item) {
@@ -477,23 +651,13 @@ public class CashierView extends Application {
 
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == ButtonType.OK) {
-                int nextId = customerManager.getAllCustomers().size();
-                return new Customer(
-                        nameField.getText(),
-                        surnameField.getText(),
-                        phoneField.getText(),
-                        0,
-                        nextId
-                );
+                return checkoutService.addCustomer(nameField.getText(), surnameField.getText(), phoneField.getText());
             }
             return null;
         });
 
         Optional<Customer> result = dialog.showAndWait();
-        result.ifPresent(newCustomer -> {
-            customerManager.addCustomer(newCustomer);
-            showAlert("Customer Added", "New customer has been added successfully.");
-        });
+        result.ifPresent(newCustomer -> showAlert("Customer Added", "New customer has been added successfully."));
     }
 
     private void showAlert(String title, String content) {
@@ -0,0 +1,81 @@
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Load driver for a CheckoutServer: many simulated lanes, each with its own connection, check out one-item
+ * baskets of random in-stock items as fast as the server answers. Prints the sales per second, the average
+ * checkout time and how many sales ended in each status. The sales are real, so point it at a test store.
+ *
+ * Run with: java CheckoutLoadDriver [host:port] [lanes] [sales per lane]
+ */
+public class CheckoutLoadDriver {
+    private static final int DEFAULT_LANES = 32;
+    private static final int DEFAULT_SALES_PER_LANE = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        String address = args.length > 0 ? args[0] : "localhost:" + CheckoutServer.DEFAULT_PORT;
+        int lanes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LANES;
+        int salesPerLane = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SALES_PER_LANE;
+
+        RemoteCheckoutService catalogLane = RemoteCheckoutService.forAddress(address);
+        List<InventoryItem> items = catalogLane.getAllItems().stream().filter(item -> item.getQuantity() > 0).toList();
+        catalogLane.close();
+        if (items.isEmpty()) {
+            System.out.println("No items in stock at " + address);
+            return;
+        }
+
+        CheckoutService.CheckoutStatus[] statuses = CheckoutService.CheckoutStatus.values();
+        AtomicLongArray counts = new AtomicLongArray(statuses.length);
+        AtomicLong checkoutNanos = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(lanes);
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            User cashier = new User("lane-" + lane, "", false);
+            Random random = new Random(lane);
+            executor.execute(() -> {
+                RemoteCheckoutService service = RemoteCheckoutService.forAddress(address);
+                try {
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < salesPerLane; i++) {
+                        InventoryItem item = items.get(random.nextInt(items.size()));
+                        long start = System.nanoTime();
+                        CheckoutService.CheckoutStatus status = service.checkout(cashier, 0,
+                                List.of(new SaleItem(item, 1, item.getPrice())), item.getPrice(), 0, 0);
+                        checkoutNanos.addAndGet(System.nanoTime() - start);
+                        counts.incrementAndGet(status.ordinal());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    service.close();
+                }
+            });
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        long total = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            total += counts.get(i);
+        }
+        System.out.println(lanes + " lanes, " + total + " sales in " + millis + " ms: " + total * 1000 / millis
+                + " sales/s, " + (total == 0 ? 0 : checkoutNanos.get() / total / 1000) + " us per checkout");
+        for (int i = 0; i < statuses.length; i++) {
+            System.out.println("  " + statuses[i] + ": " + counts.get(i));
+        }
+    }
+}
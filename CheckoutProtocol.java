@@ -0,0 +1,156 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/*
+ * Wire format between RemoteCheckoutService and CheckoutServer.
+ *
+ * Every message is a frame: int length, then that many bytes. A request is a byte opcode followed by its
+ * arguments; a response is a byte status (OK or ERROR) followed by the result, or by a UTF message on
+ * ERROR. Strings are writeUTF, money is a long in cents, a missing item or customer is a false boolean.
+ * Only the fields a lane needs travel: an item is sku, name, category, price, quantity and supplier.
+ * A sale is the lane ID (empty for an untagged checkout) and sequence number, the time the lane made it in
+ * epoch milliseconds, the cashier's username, the customer, its lines as sku, amount and unit price, then the
+ * total, discount and points redeemed.
+ */
+public final class CheckoutProtocol {
+    static final byte LIST_ITEMS = 1;
+    static final byte FIND_ITEM_BY_SKU = 2;
+    static final byte FIND_CUSTOMER = 3;
+    static final byte FIND_CUSTOMER_BY_PHONE = 4;
+    static final byte ADD_CUSTOMER = 5;
+    static final byte CHECKOUT = 6;
+    static final byte SYNC_SALES = 7;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final int MAX_FRAME = 64 << 20;
+
+    private CheckoutProtocol() {
+    }
+
+    static void writeFrame(DataOutputStream out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+
+    // Throws EOFException when the other side has closed the connection between frames.
+    static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    static void writeItem(DataOutput out, InventoryItem item) throws IOException {
+        out.writeBoolean(item != null);
+        if (item == null) {
+            return;
+        }
+        out.writeUTF(item.getSku());
+        out.writeUTF(item.getName());
+        out.writeUTF(nullToEmpty(item.getCategory()));
+        out.writeLong(item.getPrice());
+        out.writeInt(item.getQuantity());
+        out.writeUTF(nullToEmpty(item.getSupplier()));
+    }
+
+    // A detached copy for display and for naming SKUs in a checkout; its purchase figures are not sent.
+    static InventoryItem readItem(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String sku = in.readUTF();
+        String name = in.readUTF();
+        String category = in.readUTF();
+        long price = in.readLong();
+        int quantity = in.readInt();
+        String supplier = in.readUTF();
+        InventoryItem item = new InventoryItem(name, category, price, quantity, supplier, 0, 0);
+        item.setSku(sku);
+        return item;
+    }
+
+    static void writeCustomer(DataOutput out, Customer customer) throws IOException {
+        out.writeBoolean(customer != null);
+        if (customer == null) {
+            return;
+        }
+        out.writeInt(customer.getId());
+        out.writeUTF(nullToEmpty(customer.getName()));
+        out.writeUTF(nullToEmpty(customer.getSurname()));
+        out.writeUTF(nullToEmpty(customer.getPhone()));
+        out.writeInt(customer.getLoyaltyPoints());
+    }
+
+    static Customer readCustomer(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int id = in.readInt();
+        String name = in.readUTF();
+        String surname = in.readUTF();
+        String phone = in.readUTF();
+        int loyaltyPoints = in.readInt();
+        return new Customer(name, surname, phone, loyaltyPoints, id);
+    }
+
+    static void writeSale(DataOutput out, QueuedSale sale) throws IOException {
+        out.writeUTF(nullToEmpty(sale.getLaneId()));
+        out.writeLong(sale.getSequence());
+        out.writeLong(sale.getSaleTime());
+        out.writeUTF(sale.getCashier());
+        out.writeInt(sale.getCustomerId());
+        out.writeInt(sale.getItems().size());
+        for (SaleItem saleItem : sale.getItems()) {
+            out.writeUTF(saleItem.getItem().getSku());
+            out.writeInt(saleItem.getAmount());
+            out.writeLong(saleItem.getPrice());
+        }
+        out.writeLong(sale.getTotalCost());
+        out.writeInt(sale.getDiscount());
+        out.writeInt(sale.getPointsRedeemed());
+    }
+
+    // Lines name items by SKU and are matched through itemBySku. A line for a SKU it does not know (null)
+    // makes the sale null, or is left out when skipUnknown is set; the whole sale is read either way.
+    static QueuedSale readSale(DataInput in, Function<String, InventoryItem> itemBySku, boolean skipUnknown)
+            throws IOException {
+        String laneId = in.readUTF();
+        long sequence = in.readLong();
+        long saleTime = in.readLong();
+        String cashier = in.readUTF();
+        int customerId = in.readInt();
+        int lineCount = in.readInt();
+        ArrayList<SaleItem> items = new ArrayList<>(lineCount);
+        boolean unknownItem = false;
+        for (int i = 0; i < lineCount; i++) {
+            String sku = in.readUTF();
+            int amount = in.readInt();
+            long unitPrice = in.readLong();
+            InventoryItem item = itemBySku.apply(sku);
+            if (item == null) {
+                unknownItem = true;
+            } else {
+                items.add(new SaleItem(item, amount, unitPrice));
+            }
+        }
+        long totalCost = in.readLong();
+        int discount = in.readInt();
+        int pointsRedeemed = in.readInt();
+        if (unknownItem && !skipUnknown) {
+            return null;
+        }
+        return new QueuedSale(laneId, sequence, saleTime, cashier, customerId, items, totalCost, discount,
+                pointsRedeemed);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Headless store process for several cashier lanes. Listens on the loopback interface only and serves
+ * CheckoutProtocol frames; each connection is one lane and is handled by its own task on the executor,
+ * one request at a time.
+ *
+ * Run with: java CheckoutServer [port]
+ *
+ * The default executor starts a platform thread per lane. This code targets Java 17, which has no virtual
+ * threads; on Java 21 pass Executors.newVirtualThreadPerTaskExecutor() instead.
+ */
+public class CheckoutServer {
+    public static final int DEFAULT_PORT = 7300;
+
+    private final CheckoutService service;
+    private final int port;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+
+    public CheckoutServer(CheckoutService service, int port) {
+        this(service, port, Executors.newCachedThreadPool());
+    }
+
+    public CheckoutServer(CheckoutService service, int port, ExecutorService executor) {
+        this.service = service;
+        this.port = port;
+        this.executor = executor;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptThread = new Thread(this::acceptLoop, "checkout-server");
+        acceptThread.start();
+    }
+
+    // The port actually bound, for servers started on port 0.
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Lane connections are closed as well; a task blocked reading a socket does not notice an interrupt.
+    // Each socket is closed on its own, so one that fails to close does not leave the rest open.
+    public void stop() {
+        close(serverSocket);
+        for (Socket socket : connections) {
+            close(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    private static void close(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                // Closed by stop().
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connections.add(socket);
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                DataInputStream request;
+                try {
+                    request = CheckoutProtocol.readFrame(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                CheckoutProtocol.writeFrame(out, handle(request));
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private byte[] handle(DataInputStream request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(bytes);
+        try {
+            byte op = request.readByte();
+            ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+            DataOutputStream result = new DataOutputStream(resultBytes);
+            switch (op) {
+                case CheckoutProtocol.LIST_ITEMS: {
+                    List<InventoryItem> items = service.getAllItems();
+                    result.writeInt(items.size());
+                    for (InventoryItem item : items) {
+                        CheckoutProtocol.writeItem(result, item);
+                    }
+                    break;
+                }
+                case CheckoutProtocol.FIND_ITEM_BY_SKU:
+                    CheckoutProtocol.writeItem(result, service.findItemBySku(request.readUTF()));
+                    break;
+                case CheckoutProtocol.FIND_CUSTOMER:
+                    CheckoutProtocol.writeCustomer(result, service.findCustomer(request.readInt()));
+                    break;
+                case CheckoutProtocol.FIND_CUSTOMER_BY_PHONE:
+                    CheckoutProtocol.writeCustomer(result, service.findCustomerByPhone(request.readUTF()));
+                    break;
+                case CheckoutProtocol.ADD_CUSTOMER:
+                    CheckoutProtocol.writeCustomer(result,
+                            service.addCustomer(request.readUTF(), request.readUTF(), request.readUTF()));
+                    break;
+                case CheckoutProtocol.CHECKOUT:
+                    result.writeByte(checkout(request).ordinal());
+                    break;
+                case CheckoutProtocol.SYNC_SALES:
+                    result.writeBoolean(syncSales(request));
+                    break;
+                default:
+                    throw new IOException("Unknown request " + op);
+            }
+            response.writeByte(CheckoutProtocol.OK);
+            resultBytes.writeTo(response);
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+            bytes.reset();
+            response.writeByte(CheckoutProtocol.ERROR);
+            response.writeUTF(String.valueOf(e.getMessage()));
+        }
+        response.flush();
+        return bytes.toByteArray();
+    }
+
+    private CheckoutService.CheckoutStatus checkout(DataInputStream request) throws IOException {
+        QueuedSale sale = readSale(request, false);
+        if (sale == null) {
+            return CheckoutService.CheckoutStatus.OUT_OF_STOCK;
+        }
+        if (sale.getLaneId().isEmpty()) {
+            return service.checkout(new User(sale.getCashier(), "", false), sale.getCustomerId(), sale.getItems(),
+                    sale.getTotalCost(), sale.getDiscount(), sale.getPointsRedeemed());
+        }
+        return service.checkout(sale);
+    }
+
+    private boolean syncSales(DataInputStream request) throws IOException {
+        int count = request.readInt();
+        List<QueuedSale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sales.add(readSale(request, true));
+        }
+        return service.syncSales(sales);
+    }
+
+    // Lines are matched to the store's own items by SKU.
+    private QueuedSale readSale(DataInputStream request, boolean skipUnknown) throws IOException {
+        return CheckoutProtocol.readSale(request, service::findItemBySku, skipUnknown);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        StoreContext storeContext = new StoreContext();
+        CheckoutServer server = new CheckoutServer(storeContext.getLocalCheckoutService(), port);
+        server.start();
+        System.out.println("Checkout server listening on localhost:" + server.getPort());
+        System.out.println("Drive it with many simulated lanes: java CheckoutLoadDriver localhost:" + server.getPort()
+                + " [lanes] [sales per lane]");
+    }
+}
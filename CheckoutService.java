@@ -0,0 +1,42 @@
+import java.util.List;
+
+/*
+ * What a cashier lane needs from the store. LocalCheckoutService runs it against the in-process managers;
+ * RemoteCheckoutService sends the same calls to a CheckoutServer, so several lanes can share one store.
+ */
+public interface CheckoutService {
+
+    enum CheckoutStatus {
+        COMPLETED, OUT_OF_STOCK, FAILED
+    }
+
+    List<InventoryItem> getAllItems();
+
+    InventoryItem findItemBySku(String sku);
+
+    Customer findCustomer(int id);
+
+    Customer findCustomerByPhone(String phone);
+
+    // The store assigns the ID. Returns the new customer, or null if it could not be added.
+    Customer addCustomer(String name, String surname, String phone);
+
+    // Sells the basket, records the transaction and settles the customer's loyalty points (pointsRedeemed
+    // taken off, the points for totalCost, in cents, added) as one step. Nothing is sold if any line lacks stock.
+    CheckoutStatus checkout(User cashier, int customerId, List<SaleItem> items, long totalCost, int discount,
+                            int pointsRedeemed);
+
+    // The same for a sale tagged by its lane. A sale the store has already recorded is answered COMPLETED
+    // and not applied again, so a lane can safely resend one whose reply it lost.
+    CheckoutStatus checkout(QueuedSale sale);
+
+    // Sales a lane completed while it could not reach the store, oldest first. The goods have already gone,
+    // so they are recorded whatever the stock on record says; ones already recorded are skipped. True once
+    // the store has all of them.
+    boolean syncSales(List<QueuedSale> sales);
+
+    // False while the store cannot be reached; the results of lookups are then empty, not real answers.
+    default boolean isReachable() {
+        return true;
+    }
+}
@@ -1,39 +1,94 @@
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CustomerManager {
 
     ArrayList<Customer> customers;
     private final String filePath = "customers.bin";
     private POSSystem POSSystem;
-    public CustomerManager(){
+    private Runnable changeListener = () -> {};
+    private IntCustomerMap customersById = new IntCustomerMap();
+    private final Map<String, Customer> customersByPhone = new HashMap<>();
+    private final Map<Customer, String> indexedPhones = new IdentityHashMap<>();
+    private EventRing<StoreEvent> events;
+    private boolean unsavedLoyalty;
+    public CustomerManager(POSSystem posSystem){
         customers = new ArrayList<Customer>();
         loadCustomers();
-        POSSystem = new POSSystem();
+        POSSystem = posSystem;
     }
 
-    public void addCustomer(Customer customer) {
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // With an event ring, loyalty changes from sales are written to disk by a processor calling onEvent.
+    public void setEventRing(EventRing<StoreEvent> events) {
+        this.events = events;
+    }
+
+    public synchronized void addCustomer(Customer customer) {
         customers.add(customer);
+        index(customer);
         saveCustomers();
     }
 
-    public void removeCustomer(int id) {
-        customers.removeIf(customer -> customer.getId() == id);
+    public synchronized void removeCustomer(int id) {
+        Customer removed = customersById.remove(id);
+        if (removed != null) {
+            customers.remove(removed);
+            unindexPhone(removed);
+        }
         saveCustomers();
     }
 
-    public Customer findCustomer(int id) {
-        for (Customer customer : customers){
-            if(customer.getId()==id){
-                return customer;
+    // Lookups lock too: adding or updating a customer may rehash the indexes under them.
+    public synchronized Customer findCustomer(int id) {
+        return customersById.get(id);
+    }
+
+    // Matches on the digits only, so "+1 (555) 010-2000" and "15550102000" find the same customer.
+    public synchronized Customer findCustomerByPhone(String phone) {
+        String normalized = normalizePhone(phone);
+        return normalized.isEmpty() ? null : customersByPhone.get(normalized);
+    }
+
+    // A sale's change to a customer's balance, which never goes below zero. The balance changes at once;
+    // with an event ring, customers.bin is rewritten once per batch of sales instead of once per sale.
+    public void changeLoyaltyPoints(Customer customer, int change) {
+        synchronized (this) {
+            customer.setLoyaltyPoints(Math.max(0, customer.getLoyaltyPoints() + change));
+            if (events == null) {
+                saveCustomers();
+                return;
             }
         }
-        return null;
+        // Published outside the lock: the persistence processor needs it to write the file.
+        events.publish(event -> event.loyaltyChanged(customer.getId(), change));
+    }
+
+    // Persistence processor for the event ring.
+    public void onEvent(StoreEvent event, boolean endOfBatch) {
+        if (event.getType() == StoreEvent.Type.LOYALTY_CHANGED) {
+            unsavedLoyalty = true;
+        }
+        if (endOfBatch && unsavedLoyalty) {
+            unsavedLoyalty = false;
+            writeCustomers();
+        }
     }
 
     private void saveCustomers() {
+        writeCustomers();
+        changeListener.run();
+    }
+
+    private synchronized void writeCustomers() {
         try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
             out.writeObject(customers);
         } catch (IOException e) {
@@ -46,7 +101,7 @@ public class CustomerManager {
     }
 
     @SuppressWarnings("unchecked")
-    void loadCustomers() {
+    synchronized void loadCustomers() {
         try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
             Object data = in.readObject();
             if (data instanceof ArrayList<?>) {
@@ -55,27 +110,68 @@ public class CustomerManager {
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
         }
+        rebuildIndexes();
     }
 
-    public void updateCustomer(Customer updatedCustomer) {
-        for (int i = 0; i < customers.size(); i++) {
-            // Check if the customer ID matches
-            if (customers.get(i).getId() == updatedCustomer.getId()) {
-                // If it matches, replace the old customer data with the updated customer data
-                customers.set(i, updatedCustomer);
-                saveCustomers();  // Save the updated customers list to the file
-                return; // Exit the method as we've found and updated the customer
-            }
+    public synchronized void updateCustomer(Customer updatedCustomer) {
+        Customer existing = customersById.get(updatedCustomer.getId());
+        if (existing == null) {
+            return;
+        }
+        if (existing != updatedCustomer) {
+            customers.set(customers.indexOf(existing), updatedCustomer);
+            unindexPhone(existing);
         }
+        index(updatedCustomer);
+        saveCustomers();
     }
 
-    public List<Transaction> getTransactionsForCustomer(int customerId) {
-        List<Transaction> customerTransactions = new ArrayList<>();
-        for (Transaction transaction : POSSystem.getAllTransactions()) {
-            if (transaction.getBuyerID() == customerId) {
-                customerTransactions.add(transaction);
+    private void index(Customer customer) {
+        customersById.put(customer.getId(), customer);
+        unindexPhone(customer);
+        String phone = normalizePhone(customer.getPhone());
+        if (!phone.isEmpty()) {
+            customersByPhone.put(phone, customer);
+            indexedPhones.put(customer, phone);
+        }
+    }
+
+    private void unindexPhone(Customer customer) {
+        String phone = indexedPhones.remove(customer);
+        if (phone != null && customersByPhone.get(phone) == customer) {
+            customersByPhone.remove(phone);
+        }
+    }
+
+    private void rebuildIndexes() {
+        customersById = new IntCustomerMap(customers.size());
+        customersByPhone.clear();
+        indexedPhones.clear();
+        for (Customer customer : customers) {
+            index(customer);
+        }
+    }
+
+    static String normalizePhone(String phone) {
+        if (phone == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
             }
         }
-        return customerTransactions;
+        return digits.toString();
+    }
+
+    public List<Transaction> getTransactionsForCustomer(int customerId) {
+        return POSSystem.getTransactionsForCustomer(customerId);
+    }
+
+    // In cents.
+    public long getLifetimeSpend(int customerId) {
+        return POSSystem.getCustomerLifetimeSpend(customerId);
     }
 }
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * buyerID -> positions of that customer's transactions in the TransactionStore, plus a running total of
+ * what they have spent. Kept as an append-only file next to the segments: adding a sale appends one small
+ * entry, and the file is only read the first time a customer's history is asked for. If it has fallen
+ * behind the store (older data, crash between the two writes) it is rebuilt from the segments.
+ */
+public class CustomerTransactionIndex {
+    private final File file;
+    private final TransactionStore store;
+    private Map<Integer, Entry> entries;
+
+    private static class Entry {
+        long[] positions = new long[4];
+        int count;
+        long spentCents;
+
+        void add(long position, long cents) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position;
+            spentCents += cents;
+        }
+    }
+
+    public CustomerTransactionIndex(String filePath, TransactionStore store) {
+        this.file = new File(filePath);
+        this.store = store;
+    }
+
+    public void add(Transaction transaction, long position) {
+        if (position < 0) {
+            return;
+        }
+        long cents = transaction.getTotalCost();
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            writeEntry(out, transaction.getBuyerID(), position, cents);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (entries != null) {
+            entries.computeIfAbsent(transaction.getBuyerID(), id -> new Entry()).add(position, cents);
+        }
+    }
+
+    public List<Transaction> getTransactions(int buyerID) {
+        Entry entry = loadedEntries().get(buyerID);
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        return store.read(entry.positions, entry.count);
+    }
+
+    // In cents.
+    public long getLifetimeSpend(int buyerID) {
+        Entry entry = loadedEntries().get(buyerID);
+        return entry == null ? 0 : entry.spentCents;
+    }
+
+    public int getTransactionCount(int buyerID) {
+        Entry entry = loadedEntries().get(buyerID);
+        return entry == null ? 0 : entry.count;
+    }
+
+    public void rebuild() {
+        Map<Integer, Entry> rebuilt = new HashMap<>();
+        File tempFile = new File(file.getPath() + ".tmp");
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            IOException[] failure = new IOException[1];
+            store.forEachRecord((transaction, position) -> {
+                long cents = transaction.getTotalCost();
+                rebuilt.computeIfAbsent(transaction.getBuyerID(), id -> new Entry()).add(position, cents);
+                if (failure[0] == null) {
+                    try {
+                        writeEntry(out, transaction.getBuyerID(), position, cents);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries = rebuilt;
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        entries = rebuilt;
+    }
+
+    private Map<Integer, Entry> loadedEntries() {
+        if (entries == null) {
+            load();
+        }
+        return entries;
+    }
+
+    private void load() {
+        Map<Integer, Entry> loaded = new HashMap<>();
+        int indexed = 0;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                while (true) {
+                    int buyerID;
+                    long position;
+                    long cents;
+                    try {
+                        buyerID = (int) TransactionCodec.unzigzag(TransactionCodec.readVarLong(in));
+                        position = TransactionCodec.readVarLong(in);
+                        cents = TransactionCodec.unzigzag(TransactionCodec.readVarLong(in));
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    loaded.computeIfAbsent(buyerID, id -> new Entry()).add(position, cents);
+                    indexed++;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (indexed != store.size()) {
+            rebuild();
+        } else {
+            entries = loaded;
+        }
+    }
+
+    private static void writeEntry(DataOutput out, int buyerID, long position, long cents) throws IOException {
+        TransactionCodec.writeVarLong(out, TransactionCodec.zigzag(buyerID));
+        TransactionCodec.writeVarLong(out, position);
+        TransactionCodec.writeVarLong(out, TransactionCodec.zigzag(cents));
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.Serializable;
+
+/*
+ * Per-day sales and purchase totals for one item, one slot per day from the first day with activity.
+ * Kept as parallel primitive arrays indexed by (epochDay - firstDay) so five years of history is a few
+ * tens of kilobytes and a period total is a loop over a slice.
+ */
+public class DailyRollup implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static class Totals {
+        private long unitsSold;
+        private long revenueCents;
+        private long unitsBought;
+        private long costCents;
+
+        public long getUnitsSold() {
+            return unitsSold;
+        }
+
+        public long getRevenue() {
+            return revenueCents;
+        }
+
+        public long getUnitsBought() {
+            return unitsBought;
+        }
+
+        public long getCost() {
+            return costCents;
+        }
+
+        public long getProfit() {
+            return revenueCents - costCents;
+        }
+    }
+
+    private long firstDay;
+    private int length;
+    private int[] unitsSold = new int[0];
+    private long[] revenueCents = new long[0];
+    private int[] unitsBought = new int[0];
+    private long[] costCents = new long[0];
+
+    // Revenue and cost in cents.
+    public void recordSale(long epochDay, int units, long revenue) {
+        int slot = slot(epochDay);
+        unitsSold[slot] += units;
+        revenueCents[slot] += revenue;
+    }
+
+    public void recordPurchase(long epochDay, int units, long cost) {
+        int slot = slot(epochDay);
+        unitsBought[slot] += units;
+        costCents[slot] += cost;
+    }
+
+    // Both days inclusive.
+    public Totals sum(long fromDay, long toDay) {
+        Totals totals = new Totals();
+        int from = (int) Math.max(0, fromDay - firstDay);
+        int to = (int) Math.min(length - 1, toDay - firstDay);
+        for (int i = from; i <= to; i++) {
+            totals.unitsSold += unitsSold[i];
+            totals.revenueCents += revenueCents[i];
+            totals.unitsBought += unitsBought[i];
+            totals.costCents += costCents[i];
+        }
+        return totals;
+    }
+
+    // Revenue minus cost in cents for each day of fromDay..toDay inclusive, zero for days without activity.
+    public long[] dailyProfit(long fromDay, long toDay) {
+        long[] profit = new long[(int) (toDay - fromDay + 1)];
+        for (int i = 0; i < profit.length; i++) {
+            long slot = fromDay + i - firstDay;
+            if (slot >= 0 && slot < length) {
+                profit[i] = revenueCents[(int) slot] - costCents[(int) slot];
+            }
+        }
+        return profit;
+    }
+
+    // Extends the arrays to cover the day, doubling capacity at the end; a day before firstDay shifts them.
+    private int slot(long epochDay) {
+        if (length == 0) {
+            firstDay = epochDay;
+        }
+        if (epochDay < firstDay) {
+            int shift = (int) (firstDay - epochDay);
+            resize(shift, length + shift);
+            firstDay = epochDay;
+            length += shift;
+        }
+        int slot = (int) (epochDay - firstDay);
+        if (slot >= unitsSold.length) {
+            resize(0, Math.max(slot + 1, unitsSold.length * 2));
+        }
+        length = Math.max(length, slot + 1);
+        return slot;
+    }
+
+    private void resize(int shift, int capacity) {
+        unitsSold = copy(unitsSold, shift, capacity);
+        revenueCents = copy(revenueCents, shift, capacity);
+        unitsBought = copy(unitsBought, shift, capacity);
+        costCents = copy(costCents, shift, capacity);
+    }
+
+    private int[] copy(int[] values, int shift, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(values, 0, copy, shift, length);
+        return copy;
+    }
+
+    private long[] copy(long[] values, int shift, int capacity) {
+        long[] copy = new long[capacity];
+        System.arraycopy(values, 0, copy, shift, length);
+        return copy;
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Bounded ring of pre-allocated event slots with one thread per processor, in the style of a disruptor.
+ * A publisher fills the next slot in place, so publishing allocates nothing; the slot is reused once every
+ * processor has passed it, and a publisher that gets a whole ring ahead of the slowest processor waits.
+ *
+ * Each processor sees every event in order, and handles everything published since its last turn as one
+ * batch; endOfBatch lets it do its expensive work (a file write, a view refresh) once per batch. A
+ * processor can be made to run behind others, so it only sees an event once they have handled it.
+ *
+ * Handlers must not publish to the ring they are reading, or a full ring would wait on itself.
+ */
+public class EventRing<T> {
+
+    public interface Handler<T> {
+        void onEvent(T event, boolean endOfBatch);
+    }
+
+    public final class Processor {
+        private final Handler<T> handler;
+        private final List<Processor> after;
+        private volatile long sequence = -1;
+
+        private Processor(Handler<T> handler, List<Processor> after) {
+            this.handler = handler;
+            this.after = after;
+        }
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    private final List<Processor> processors = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private long cursor = -1;
+
+    // capacity is rounded up to a power of two.
+    public EventRing(int capacity, Supplier<T> factory) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new Object[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+        }
+        mask = size - 1;
+    }
+
+    // Add processors before the first publish; one added later starts at the events still to come.
+    public Processor addProcessor(String name, Handler<T> handler) {
+        return addProcessor(name, handler, List.of());
+    }
+
+    // The processor sees an event only once every processor in after has handled it.
+    public Processor addProcessor(String name, Handler<T> handler, List<Processor> after) {
+        Processor processor = new Processor(handler, List.copyOf(after));
+        lock.lock();
+        try {
+            processor.sequence = cursor;
+            processors.add(processor);
+        } finally {
+            lock.unlock();
+        }
+        Thread thread = new Thread(() -> run(processor), name);
+        thread.setDaemon(true);
+        thread.start();
+        return processor;
+    }
+
+    // writer fills the slot in place; it runs under the ring's lock, so keep it to setting fields.
+    public void publish(Consumer<T> writer) {
+        lock.lock();
+        try {
+            while (cursor + 1 - slots.length > slowestSequence()) {
+                progress.awaitUninterruptibly();
+            }
+            long next = cursor + 1;
+            writer.accept(slot(next));
+            cursor = next;
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until every processor has handled everything published so far.
+    public void awaitIdle() {
+        lock.lock();
+        try {
+            long target = cursor;
+            while (slowestSequence() < target) {
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // As awaitIdle, but gives up after the timeout; false if the processors had not caught up by then.
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            long target = cursor;
+            while (slowestSequence() < target) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = progress.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Processor processor) {
+        while (true) {
+            long next = processor.sequence + 1;
+            long available;
+            lock.lock();
+            try {
+                while ((available = availableTo(processor)) < next) {
+                    progress.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (long sequence = next; sequence <= available; sequence++) {
+                try {
+                    processor.handler.onEvent(slot(sequence), sequence == available);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            lock.lock();
+            try {
+                processor.sequence = available;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long availableTo(Processor processor) {
+        long available = cursor;
+        for (Processor before : processor.after) {
+            available = Math.min(available, before.sequence);
+        }
+        return available;
+    }
+
+    private long slowestSequence() {
+        long slowest = cursor;
+        for (Processor processor : processors) {
+            slowest = Math.min(slowest, processor.sequence);
+        }
+        return slowest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T slot(long sequence) {
+        return (T) slots[(int) (sequence & mask)];
+    }
+}
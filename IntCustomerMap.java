@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/*
+ * Open-addressing hash map from a primitive int customer id to its Customer, so lookups never box the key.
+ * Linear probing over a power-of-two table; removal shifts the following entries back instead of leaving
+ * tombstones. A null value marks an empty slot.
+ */
+public class IntCustomerMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Customer[] values;
+    private int size;
+    private int resizeAt;
+
+    public IntCustomerMap() {
+        this(16);
+    }
+
+    public IntCustomerMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public Customer get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    public Customer put(int key, Customer value) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                Customer previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    public Customer remove(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                Customer removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Moves later entries of the probe chain into the freed slot so lookups never hit a gap.
+    private void shiftBack(int freed) {
+        int mask = keys.length - 1;
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = mix(keys[slot]) & mask;
+            boolean movable = freed <= slot ? (home <= freed || home > slot) : (home <= freed && home > slot);
+            if (movable) {
+                keys[freed] = keys[slot];
+                values[freed] = values[slot];
+                freed = slot;
+            }
+        }
+        values[freed] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Customer[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Customer[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
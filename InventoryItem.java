@@ -1,29 +1,73 @@
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.time.LocalDate;
 
 public class InventoryItem implements Serializable {
+    private static final long serialVersionUID = -1603993494624395731L;
+
+    private String sku;
     private String name;
-    private double price;
+    // Money is in cents; see Money.
+    private long priceCents;
     private int quantity;
     private String supplier;
     private String category;
     private int amountSold;
     private int amountBought;
-    private double purchasePrice;
-    private double totalSpent;
-    private double totalEarned;
+    private long purchasePriceCents;
+    private long totalSpentCents;
+    private long totalEarnedCents;
+    private DailyRollup dailyRollup;
 
-    public InventoryItem(String name, String category, double price, int quantity, String supplier, double purchasePrice, int amountBought) {
+    public InventoryItem(String name, String category, long price, int quantity, String supplier, long purchasePrice, int amountBought) {
         this.name = name;
-        this.price = price;
+        this.priceCents = price;
         this.quantity = quantity;
         this.supplier = supplier;
         this.category = category;
-        this.purchasePrice = purchasePrice;
+        this.purchasePriceCents = purchasePrice;
         this.amountBought = amountBought;
         amountSold = 0;
-        totalSpent = purchasePrice*amountBought;
-        totalEarned = 0;
+        totalSpentCents = Money.times(purchasePrice, amountBought);
+        totalEarnedCents = 0;
+        dailyRollup = new DailyRollup();
+    }
+
+    // Items saved before money was kept in cents have the amounts as doubles named price, purchasePrice,
+    // totalSpent and totalEarned; they are converted once here and saved in cents from then on.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass saved = fields.getObjectStreamClass();
+        sku = (String) fields.get("sku", null);
+        name = (String) fields.get("name", null);
+        quantity = fields.get("quantity", 0);
+        supplier = (String) fields.get("supplier", null);
+        category = (String) fields.get("category", null);
+        amountSold = fields.get("amountSold", 0);
+        amountBought = fields.get("amountBought", 0);
+        dailyRollup = (DailyRollup) fields.get("dailyRollup", null);
+        if (saved.getField("priceCents") != null) {
+            priceCents = fields.get("priceCents", 0L);
+            purchasePriceCents = fields.get("purchasePriceCents", 0L);
+            totalSpentCents = fields.get("totalSpentCents", 0L);
+            totalEarnedCents = fields.get("totalEarnedCents", 0L);
+        } else {
+            priceCents = Money.ofDouble(fields.get("price", 0.0));
+            purchasePriceCents = Money.ofDouble(fields.get("purchasePrice", 0.0));
+            totalSpentCents = Money.ofDouble(fields.get("totalSpent", 0.0));
+            totalEarnedCents = Money.ofDouble(fields.get("totalEarned", 0.0));
+        }
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public void setSku(String sku) {
+        this.sku = sku;
     }
 
     public String getName() {
@@ -38,16 +82,16 @@ public class InventoryItem implements Serializable {
         return quantity;
     }
 
-    public double getPrice() {
-        return price;
+    public long getPrice() {
+        return priceCents;
     }
 
     public void setName(String name) {
         this.name = name;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
+    public void setPrice(long price) {
+        this.priceCents = price;
     }
 
     public void setSupplier(String supplier) {
@@ -70,29 +114,49 @@ public class InventoryItem implements Serializable {
         return amountBought;
     }
 
-    public void addStock(int newStock, double purchasePrice){
+    public void addStock(int newStock, long purchasePrice){
+        long cost = Money.times(purchasePrice, newStock);
         quantity+=newStock;
-        this.purchasePrice = purchasePrice;
-        totalSpent+=(newStock*purchasePrice);
+        this.purchasePriceCents = purchasePrice;
+        totalSpentCents+=cost;
         amountBought+=newStock;
+        getDailyRollup().recordPurchase(LocalDate.now().toEpochDay(), newStock, cost);
     }
 
     public void sellItem(int amount){
+        sellItem(amount, LocalDate.now().toEpochDay(), Money.times(priceCents, amount));
+    }
+
+    // A sale made on epochDay for revenue in cents, such as one a lane made offline at the price it had then.
+    public void sellItem(int amount, long epochDay, long revenue){
         quantity-=amount;
-        totalEarned += price*amount;
+        totalEarnedCents += revenue;
         amountSold+=amount;
+        getDailyRollup().recordSale(epochDay, amount, revenue);
+    }
+
+    // False only for items saved before rollups existed, until InventoryManager.backfillRollups has run.
+    boolean hasDailyRollup() {
+        return dailyRollup != null;
+    }
+
+    public DailyRollup getDailyRollup() {
+        if (dailyRollup == null) {
+            dailyRollup = new DailyRollup();
+        }
+        return dailyRollup;
     }
 
-    public double getTotalEarned() {
-        return totalEarned;
+    public long getTotalEarned() {
+        return totalEarnedCents;
     }
 
     public int getAmountSold() {
         return amountSold;
     }
 
-    public double getTotalSpent() {
-        return totalSpent;
+    public long getTotalSpent() {
+        return totalSpentCents;
     }
 
 
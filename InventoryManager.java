@@ -1,24 +1,157 @@
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
+/*
+ * Safe to use from several checkout lanes at once.
+ *
+ * Stock changes lock only the stripes of the SKUs involved; a basket locks all of its stripes in index
+ * order, checks every line and then decrements, so two lanes can never oversell the same item and lanes
+ * selling different items do not wait for each other. Adding, removing and replacing items takes the
+ * structure lock; lookups go through concurrent indexes and take no lock.
+ *
+ * Saves are write-behind: a change queues one background write, and changes that arrive before it runs
+ * share it. The writer serializes a snapshot in memory with every stripe held, then writes the file
+ * without holding any lock.
+ */
 public class InventoryManager {
+    private static final int STRIPES = 64;
+
     private ArrayList<InventoryItem> items;
     private final String filePath = "inventory.bin";
+    private Runnable changeListener = () -> {};
+    private final Map<String, InventoryItem> itemsBySku = new ConcurrentHashMap<>();
+    private final Map<String, InventoryItem> itemsByName = new ConcurrentHashMap<>();
+    private final Map<String, String> indexedNameBySku = new ConcurrentHashMap<>();
+    private long nextSku = 1;
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean writeQueued = new AtomicBoolean();
+    private EventRing<StoreEvent> events;
 
     public InventoryManager() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
         items = new ArrayList<>();
         loadItems();
+        rebuildIndexes();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // With an event ring, stock changes are published as STOCK_CHANGED events for the views instead of
+    // calling the change listener, so a burst of sales refreshes them once.
+    public void setEventRing(EventRing<StoreEvent> events) {
+        this.events = events;
     }
 
-    public void addItem(InventoryItem item) {
-        items.add(item);
+    // Returns false, adding nothing, if another item already has the SKU; replacing it would leave two
+    // items in the list and only one in the index.
+    public boolean addItem(InventoryItem item) {
+        structureLock.writeLock().lock();
+        try {
+            if (item.getSku() == null || item.getSku().isBlank()) {
+                item.setSku(generateSku());
+            }
+            ReentrantLock stripe = stripe(item.getSku());
+            stripe.lock();
+            try {
+                if (itemsBySku.containsKey(item.getSku())) {
+                    return false;
+                }
+                items.add(item);
+                index(item);
+            } finally {
+                stripe.unlock();
+            }
+        } finally {
+            structureLock.writeLock().unlock();
+        }
         saveItems();
+        return true;
     }
 
     private void saveItems() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(items);
+        queueWrite();
+        changeListener.run();
+    }
+
+    private void saveStock(InventoryItem item, int quantityChange) {
+        queueWrite();
+        if (events == null) {
+            changeListener.run();
+        } else {
+            events.publish(event -> event.stockChanged(item.getSku(), quantityChange));
+        }
+    }
+
+    private void queueWrite() {
+        if (writeQueued.compareAndSet(false, true)) {
+            writer.execute(this::writeItems);
+        }
+    }
+
+    // Blocks until every change made so far is on disk.
+    public void flush() {
+        try {
+            writer.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeItems() {
+        writeQueued.set(false);
+        byte[] snapshot;
+        structureLock.readLock().lock();
+        lockAll();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(items);
+            }
+            snapshot = bytes.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            unlockAll();
+            structureLock.readLock().unlock();
+        }
+
+        File file = new File(filePath);
+        File tempFile = new File(filePath + ".tmp");
+        try {
+            Files.write(tempFile.toPath(), snapshot);
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -36,35 +169,282 @@ public class InventoryManager {
         }
     }
 
+    // A copy, so callers can iterate it while other lanes add or remove items.
     public ArrayList<InventoryItem> getAllItems() {
-        return items;
+        structureLock.readLock().lock();
+        try {
+            return new ArrayList<>(items);
+        } finally {
+            structureLock.readLock().unlock();
+        }
     }
 
     public void removeItem(InventoryItem item) {
-        items.remove(item);
+        structureLock.writeLock().lock();
+        try {
+            if (items.remove(item)) {
+                itemsBySku.remove(item.getSku());
+                String indexedName = indexedNameBySku.remove(item.getSku());
+                if (indexedName != null && itemsByName.get(indexedName) == item) {
+                    itemsByName.remove(indexedName);
+                }
+            }
+        } finally {
+            structureLock.writeLock().unlock();
+        }
         saveItems();
     }
 
+    // Names are matched ignoring case and surrounding whitespace.
     public InventoryItem findItem(String itemName) {
-        return items.stream()
-                .filter(item -> item.getName().equals(itemName))
-                .findFirst()
-                .orElse(null);
+        return itemName == null ? null : itemsByName.get(normalizeName(itemName));
     }
 
+    public InventoryItem findItemBySku(String sku) {
+        return sku == null ? null : itemsBySku.get(sku.trim());
+    }
 
+    // Items are matched by SKU, so an item that was renamed through setName is still found and re-indexed.
     public void updateItem(InventoryItem updatedItem) {
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getName().equals(updatedItem.getName())) {
-                items.set(i, updatedItem);
-                saveItems();
+        structureLock.writeLock().lock();
+        try {
+            InventoryItem existing = itemsBySku.get(updatedItem.getSku());
+            if (existing == null) {
                 return;
             }
+            if (existing != updatedItem) {
+                items.set(items.indexOf(existing), updatedItem);
+            }
+            index(updatedItem);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        saveItems();
+    }
+
+    // An edit from the admin screen. The fields change with the item's stripe held, so a lane selling it never
+    // sees a half-edited item; false, changing nothing, if the item has been removed.
+    public boolean editItem(InventoryItem item, String name, String category, long price, int quantity, String supplier) {
+        structureLock.writeLock().lock();
+        ReentrantLock stripe = stripe(item.getSku());
+        stripe.lock();
+        try {
+            if (itemsBySku.get(item.getSku()) != item) {
+                return false;
+            }
+            item.setName(name);
+            item.setCategory(category);
+            item.setPrice(price);
+            item.setQuantity(quantity);
+            item.setSupplier(supplier);
+            index(item);
+        } finally {
+            stripe.unlock();
+            structureLock.writeLock().unlock();
         }
+        saveItems();
+        return true;
+    }
+
+    // Returns false without selling anything if there is not enough stock.
+    public boolean sellItem(InventoryItem item, int amount){
+        ReentrantLock stripe = stripe(item.getSku());
+        stripe.lock();
+        try {
+            if (item.getQuantity() < amount) {
+                return false;
+            }
+            item.sellItem(amount);
+        } finally {
+            stripe.unlock();
+        }
+        saveStock(item, -amount);
+        return true;
+    }
+
+    public void addStock(InventoryItem item, int amount, long purchasePrice) {
+        ReentrantLock stripe = stripe(item.getSku());
+        stripe.lock();
+        try {
+            item.addStock(amount, purchasePrice);
+        } finally {
+            stripe.unlock();
+        }
+        saveStock(item, amount);
+    }
+
+    // Sells a whole basket with a single write. Nothing is decremented unless every line has enough stock.
+    // The stripes are taken in index order so two baskets sharing items cannot deadlock. The daily rollups
+    // count the sale on epochDay at the lines' own prices, as the transaction does.
+    public boolean sellItems(List<SaleItem> saleItems, long epochDay) {
+        return changeStock(saleItems, false, 1, epochDay);
+    }
+
+    // For sales a lane made while it was offline: the goods have already gone, so every line is taken off
+    // even if that leaves a negative count, which stays visible until the next restock or stock count.
+    // Lines for items removed since are skipped. epochDay is the day the lane made the sale.
+    public void recordOfflineSale(List<SaleItem> saleItems, long epochDay) {
+        changeStock(saleItems, true, 1, epochDay);
+    }
+
+    // Puts back a basket taken by sellItems or recordOfflineSale whose transaction could not be stored,
+    // sales figures included; epochDay must be the day it was taken on.
+    public void returnItems(List<SaleItem> saleItems, long epochDay) {
+        changeStock(saleItems, true, -1, epochDay);
+    }
+
+    // direction is 1 to sell the lines and -1 to put them back; offline skips the stock check and lines for
+    // items that no longer exist.
+    private boolean changeStock(List<SaleItem> saleItems, boolean offline, int direction, long epochDay) {
+        // Units and revenue in cents per item.
+        Map<InventoryItem, long[]> requested = new HashMap<>();
+        TreeMap<Integer, ReentrantLock> basketStripes = new TreeMap<>();
+        for (SaleItem saleItem : saleItems) {
+            InventoryItem item = itemsBySku.get(saleItem.getItem().getSku());
+            if (item == null) {
+                if (offline) {
+                    continue;
+                }
+                return false;
+            }
+            long[] totals = requested.computeIfAbsent(item, key -> new long[2]);
+            totals[0] += saleItem.getAmount();
+            totals[1] += saleItem.getLineTotal();
+            int index = stripeIndex(item.getSku());
+            basketStripes.put(index, stripes[index]);
+        }
+
+        for (ReentrantLock stripe : basketStripes.values()) {
+            stripe.lock();
+        }
+        try {
+            for (Map.Entry<InventoryItem, long[]> entry : requested.entrySet()) {
+                if (!offline && entry.getKey().getQuantity() < entry.getValue()[0]) {
+                    return false;
+                }
+            }
+
+            for (Map.Entry<InventoryItem, long[]> entry : requested.entrySet()) {
+                entry.getKey().sellItem(direction * (int) entry.getValue()[0], epochDay, direction * entry.getValue()[1]);
+            }
+        } finally {
+            for (ReentrantLock stripe : basketStripes.descendingMap().values()) {
+                stripe.unlock();
+            }
+        }
+        if (events == null) {
+            saveItems();
+        } else {
+            queueWrite();
+            for (Map.Entry<InventoryItem, long[]> entry : requested.entrySet()) {
+                events.publish(event -> event.stockChanged(entry.getKey().getSku(), -direction * (int) entry.getValue()[0]));
+            }
+        }
+        return true;
+    }
+
+    // Items sold before daily rollups existed have lifetime totals but no per-day history. Their past sales
+    // are replayed from the transaction history once; purchases were never dated, so their cost is not.
+    // The history is summed per item and day without any lock; each item's totals are then recorded with
+    // only its stripe held, and an item counts as having a rollup only once they are.
+    public void backfillRollups(Stream<Transaction> history) {
+        Map<InventoryItem, TreeMap<Long, long[]>> salesByItem = new IdentityHashMap<>();
+        for (InventoryItem item : getAllItems()) {
+            if (!item.hasDailyRollup()) {
+                salesByItem.put(item, new TreeMap<>());
+            }
+        }
+        if (salesByItem.isEmpty()) {
+            return;
+        }
+        history.forEach(transaction -> {
+            long day = TransactionStore.epochDay(transaction.getDate());
+            for (SaleItem saleItem : transaction.getItems()) {
+                TreeMap<Long, long[]> sales = salesByItem.get(saleItem.getItem());
+                if (sales != null) {
+                    long[] totals = sales.computeIfAbsent(day, d -> new long[2]);
+                    totals[0] += saleItem.getAmount();
+                    totals[1] += saleItem.getLineTotal();
+                }
+            }
+        });
+
+        for (Map.Entry<InventoryItem, TreeMap<Long, long[]>> entry : salesByItem.entrySet()) {
+            ReentrantLock stripe = stripe(entry.getKey().getSku());
+            stripe.lock();
+            try {
+                DailyRollup rollup = entry.getKey().getDailyRollup();
+                for (Map.Entry<Long, long[]> day : entry.getValue().entrySet()) {
+                    rollup.recordSale(day.getKey(), Math.toIntExact(day.getValue()[0]), day.getValue()[1]);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        saveItems();
+    }
+
+    private void index(InventoryItem item) {
+        String name = normalizeName(item.getName());
+        String previousName = indexedNameBySku.put(item.getSku(), name);
+        if (previousName != null && !previousName.equals(name) && itemsByName.get(previousName) == item) {
+            itemsByName.remove(previousName);
+        }
+        itemsBySku.put(item.getSku(), item);
+        itemsByName.put(name, item);
+    }
+
+    // Items saved before SKUs existed are given one on first load.
+    private void rebuildIndexes() {
+        for (InventoryItem item : items) {
+            if (item.getSku() != null && item.getSku().matches("\\d{1,18}")) {
+                nextSku = Math.max(nextSku, Long.parseLong(item.getSku()) + 1);
+            }
+        }
+        boolean assigned = false;
+        for (InventoryItem item : items) {
+            if (item.getSku() == null || item.getSku().isBlank()) {
+                item.setSku(generateSku());
+                assigned = true;
+            }
+            index(item);
+        }
+        if (assigned) {
+            saveItems();
+        }
+    }
+
+    private int stripeIndex(String sku) {
+        int h = sku.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private ReentrantLock stripe(String sku) {
+        return stripes[stripeIndex(sku)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    // Skips numbers that were typed in as SKUs since.
+    private String generateSku() {
+        String sku;
+        do {
+            sku = String.format("%08d", nextSku++);
+        } while (itemsBySku.containsKey(sku));
+        return sku;
     }
 
-    public void sellItem(InventoryItem item, int amount){
-        item.sellItem(amount);
-        updateItem(item);
+    static String normalizeName(String name) {
+        return name.trim().toLowerCase();
     }
 }
@@ -0,0 +1,147 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Name search over a snapshot of the items. Names are normalized once (lower case, accents dropped, runs
+ * of spaces collapsed) and every three-character run is indexed, so a query of three or more characters
+ * only checks the items that contain its rarest trigram. A query that extends the previous one only
+ * re-checks the previous matches. Matching is by substring, as before; results keep the order of the
+ * items given and leave out items that are out of stock, as the cashier's table hides them.
+ *
+ * Stock changes are applied with update, item by item; only a new, removed or renamed item needs a new
+ * index.
+ *
+ * Not thread-safe: CashierView builds, updates and searches it on its search thread only. positionOf may
+ * be called from any thread, as positions never change.
+ */
+public class ItemSearchIndex {
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final InventoryItem[] items;
+    private final String[] names;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<Long, int[]> trigrams = new HashMap<>();
+    private final int[] everything;
+    private String lastQuery = "";
+    private int[] lastMatches;
+
+    public ItemSearchIndex(List<InventoryItem> catalog) {
+        items = catalog.toArray(new InventoryItem[0]);
+        names = new String[items.length];
+        everything = new int[items.length];
+
+        Map<Long, int[]> postings = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (int i = 0; i < items.length; i++) {
+            everything[i] = i;
+            positions.put(items[i].getSku(), i);
+            names[i] = normalize(items[i].getName());
+            String name = names[i];
+            for (int start = 0; start + 3 <= name.length(); start++) {
+                long key = trigram(name, start);
+                int size = sizes.getOrDefault(key, 0);
+                int[] list = postings.get(key);
+                if (list == null) {
+                    list = new int[4];
+                } else if (list[size - 1] == i) {
+                    // Trigram seen earlier in the same name.
+                    continue;
+                } else if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                }
+                list[size] = i;
+                postings.put(key, list);
+                sizes.put(key, size + 1);
+            }
+        }
+        postings.forEach((key, list) -> trigrams.put(key, Arrays.copyOf(list, sizes.get(key))));
+        lastMatches = everything;
+    }
+
+    public List<InventoryItem> search(String query) {
+        String normalized = normalize(query);
+        int[] candidates;
+        if (normalized.isEmpty()) {
+            candidates = everything;
+        } else if (!lastQuery.isEmpty() && normalized.contains(lastQuery)) {
+            candidates = lastMatches;
+        } else if (normalized.length() >= 3) {
+            candidates = rarestTrigram(normalized);
+        } else {
+            candidates = everything;
+        }
+
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int index : candidates) {
+            if (names[index].contains(normalized)) {
+                matches[count++] = index;
+            }
+        }
+        lastQuery = normalized;
+        lastMatches = Arrays.copyOf(matches, count);
+
+        // Stock is checked only here, so matches stay valid for a later query whatever happens to stock.
+        List<InventoryItem> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (items[matches[i]].getQuantity() > 0) {
+                result.add(items[matches[i]]);
+            }
+        }
+        return result;
+    }
+
+    // Puts the item in place of the indexed one with its SKU, for its new stock. False, changing nothing,
+    // if the index has no item with that SKU or knows it under another name.
+    public boolean update(InventoryItem item) {
+        Integer position = positions.get(item.getSku());
+        if (position == null || !names[position].equals(normalize(item.getName()))) {
+            return false;
+        }
+        items[position] = item;
+        return true;
+    }
+
+    // Whether search(query) would return the item; it must have been given to update first.
+    public boolean shows(InventoryItem item, String query) {
+        Integer position = positions.get(item.getSku());
+        return position != null && item.getQuantity() > 0 && names[position].contains(normalize(query));
+    }
+
+    // Where the item with this SKU stands in the catalog order results keep, or -1.
+    public int positionOf(String sku) {
+        Integer position = positions.get(sku);
+        return position == null ? -1 : position;
+    }
+
+    private int[] rarestTrigram(String query) {
+        int[] rarest = null;
+        for (int start = 0; start + 3 <= query.length(); start++) {
+            int[] list = trigrams.get(trigram(query, start));
+            if (list == null) {
+                return NO_MATCHES;
+            }
+            if (rarest == null || list.length < rarest.length) {
+                rarest = list;
+            }
+        }
+        return rarest;
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/*
+ * CheckoutService over one process's StoreContext. Stock is taken through InventoryManager's striped locks,
+ * so lanes selling different items run in parallel; recording the transaction and touching customers is
+ * serialized on this object, since POSSystem and CustomerManager expect one caller at a time.
+ *
+ * A tagged sale's lane ID and sequence number are stored in its transaction record, written and synced in
+ * one append, so once a sale is recorded the store knows it even after a crash. The highest sequence per
+ * lane is kept in memory; transactions/lanes.bin saves it with the day it was saved on, and on load the
+ * records of that day onwards are read to catch up, or the whole store if the file is missing or older.
+ * One lane's sales are handled one at a time, so a resend racing the original cannot be applied twice.
+ * Loyalty points and stock are changed by the sale's own amounts, never overwritten with what a lane last saw.
+ */
+public class LocalCheckoutService implements CheckoutService {
+    private final InventoryManager inventoryManager;
+    private final CustomerManager customerManager;
+    private final POSController posController;
+    private final POSSystem posSystem;
+    private final File lanesFile = new File("transactions", "lanes.bin");
+    private final HashMap<String, Long> recordedSequences;
+    private final Map<String, Object> laneLocks = new ConcurrentHashMap<>();
+
+    public LocalCheckoutService(StoreContext storeContext) {
+        this.inventoryManager = storeContext.getInventoryManager();
+        this.customerManager = storeContext.getCustomerManager();
+        this.posController = storeContext.getPosController();
+        this.posSystem = storeContext.getPosSystem();
+        this.recordedSequences = loadRecordedSequences();
+    }
+
+    @Override
+    public List<InventoryItem> getAllItems() {
+        return inventoryManager.getAllItems();
+    }
+
+    @Override
+    public InventoryItem findItemBySku(String sku) {
+        return inventoryManager.findItemBySku(sku);
+    }
+
+    @Override
+    public synchronized Customer findCustomer(int id) {
+        return customerManager.findCustomer(id);
+    }
+
+    @Override
+    public synchronized Customer findCustomerByPhone(String phone) {
+        return customerManager.findCustomerByPhone(phone);
+    }
+
+    @Override
+    public synchronized Customer addCustomer(String name, String surname, String phone) {
+        Customer customer = new Customer(name, surname, phone, 0, customerManager.getAllCustomers().size());
+        customerManager.addCustomer(customer);
+        return customer;
+    }
+
+    @Override
+    public CheckoutStatus checkout(User cashier, int customerId, List<SaleItem> items, long totalCost, int discount,
+                                   int pointsRedeemed) {
+        long today = LocalDate.now().toEpochDay();
+        if (!inventoryManager.sellItems(items, today)) {
+            return CheckoutStatus.OUT_OF_STOCK;
+        }
+        if (!record(cashier, customerId, items, totalCost, discount, pointsRedeemed, null, null)) {
+            inventoryManager.returnItems(items, today);
+            return CheckoutStatus.FAILED;
+        }
+        return CheckoutStatus.COMPLETED;
+    }
+
+    @Override
+    public CheckoutStatus checkout(QueuedSale sale) {
+        synchronized (laneLock(sale)) {
+            if (isRecorded(sale)) {
+                return CheckoutStatus.COMPLETED;
+            }
+            long today = LocalDate.now().toEpochDay();
+            if (!inventoryManager.sellItems(sale.getItems(), today)) {
+                return CheckoutStatus.OUT_OF_STOCK;
+            }
+            if (!record(sale, null)) {
+                inventoryManager.returnItems(sale.getItems(), today);
+                return CheckoutStatus.FAILED;
+            }
+        }
+        return CheckoutStatus.COMPLETED;
+    }
+
+    // Synced sales are dated when they reach the store: day segments are append-only in time order and
+    // closed days are sealed, so a sale cannot be slotted back in at the time the lane made it. They are
+    // recorded as late sales instead, keeping the time the lane made them as their sale date.
+    @Override
+    public boolean syncSales(List<QueuedSale> sales) {
+        for (QueuedSale sale : sales) {
+            synchronized (laneLock(sale)) {
+                if (isRecorded(sale)) {
+                    continue;
+                }
+                // Item figures go by the day the lane made the sale, as the item report shows sales.
+                long saleDay = TransactionStore.epochDay(sale.getSaleTime());
+                inventoryManager.recordOfflineSale(sale.getItems(), saleDay);
+                if (!record(sale, new Date(sale.getSaleTime()))) {
+                    // The lane keeps this sale and the ones after it queued and sends them again.
+                    inventoryManager.returnItems(sale.getItems(), saleDay);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean record(QueuedSale sale, Date saleDate) {
+        return record(new User(sale.getCashier(), "", false), sale.getCustomerId(), sale.getItems(),
+                sale.getTotalCost(), sale.getDiscount(), sale.getPointsRedeemed(), sale, saleDate);
+    }
+
+    // False if the transaction could not be stored; the customer and the lane's sequence are then left alone.
+    // saleDate is set for a late sale.
+    private synchronized boolean record(User cashier, int customerId, List<SaleItem> items, long totalCost,
+                                        int discount, int pointsRedeemed, QueuedSale sale, Date saleDate) {
+        if (!posController.processTransaction(new ArrayList<>(items), cashier, customerId, totalCost, discount,
+                saleDate, sale == null ? null : sale.getLaneId(), sale == null ? 0 : sale.getSequence())) {
+            return false;
+        }
+        Customer customer = customerManager.findCustomer(customerId);
+        if (customer != null) {
+            // Never below zero: a lane that was offline may have redeemed points another lane has spent since.
+            customerManager.changeLoyaltyPoints(customer, POSController.loyaltyPointsFor(totalCost) - pointsRedeemed);
+        }
+        if (sale != null) {
+            recordedSequences.put(sale.getLaneId(), sale.getSequence());
+            saveRecordedSequences();
+        }
+        return true;
+    }
+
+    private synchronized boolean isRecorded(QueuedSale sale) {
+        Long recorded = recordedSequences.get(sale.getLaneId());
+        return recorded != null && sale.getSequence() <= recorded;
+    }
+
+    private Object laneLock(QueuedSale sale) {
+        return laneLocks.computeIfAbsent(sale.getLaneId(), laneId -> new Object());
+    }
+
+    // Files written before the day was saved with the sequences hold just the map; the whole store is read then.
+    @SuppressWarnings("unchecked")
+    private HashMap<String, Long> loadRecordedSequences() {
+        HashMap<String, Long> sequences = new HashMap<>();
+        long fromDay = Long.MIN_VALUE;
+        if (lanesFile.exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(lanesFile)))) {
+                sequences = (HashMap<String, Long>) in.readObject();
+                fromDay = in.readLong();
+            } catch (EOFException e) {
+                // No day saved.
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        HashMap<String, Long> recorded = sequences;
+        try (Stream<Transaction> transactions = posSystem.streamTransactionsFrom(fromDay)) {
+            transactions.forEach(transaction -> {
+                if (transaction.getLaneId() != null) {
+                    recorded.merge(transaction.getLaneId(), transaction.getLaneSequence(), Math::max);
+                }
+            });
+        }
+        return recorded;
+    }
+
+    // Not synced: the records are what counts, and a file that lags them only makes the next load read more.
+    // A sale recorded after this is dated on or after the day saved, as dates are taken when a sale is stored.
+    private void saveRecordedSequences() {
+        lanesFile.getParentFile().mkdirs();
+        File tempFile = new File(lanesFile.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeObject(recordedSequences);
+            out.writeLong(TransactionStore.epochDay(new Date()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), lanesFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
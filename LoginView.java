@@ -8,8 +8,7 @@ import javafx.scene.text.Text;
 import javafx.stage.Stage;
 
 public class LoginView extends Application {
-    private UserManager userManager;
-    private POSController posController;
+    private StoreContext storeContext;
     private Stage primaryStage;
 
     private AuthController authController;
@@ -17,11 +16,10 @@ public class LoginView extends Application {
     AdminView managerView;
 
 
-    public LoginView(UserManager userManager, POSController posController, AuthController authController) {
-        this.userManager = userManager;
-        this.posController = posController;
-        this.authController = authController;
-        managerView = new AdminView(userManager);
+    public LoginView(StoreContext storeContext) {
+        this.storeContext = storeContext;
+        this.authController = storeContext.getAuthController();
+        managerView = new AdminView(storeContext);
     }
 
     @Override
@@ -77,7 +75,7 @@ public class LoginView extends Application {
     }
 
     private void launchCashierUI(User loggedUser) {
-        CashierView cashierView = new CashierView(loggedUser);
+        CashierView cashierView = new CashierView(loggedUser, storeContext);
         cashierView.start(primaryStage);
     }
 }
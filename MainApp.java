@@ -15,20 +15,13 @@ import javafx.stage.Stage;
 
 
 public class MainApp extends Application {
-    private UserManager userManager;
-    private InventoryManager inventoryManager;
-    private POSController posController;
-    private AuthController authController;
+    private StoreContext storeContext;
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        userManager = new UserManager();
-        inventoryManager = new InventoryManager();
-        authController = new AuthController();
+        storeContext = new StoreContext();
 
-        posController = new POSController(inventoryManager);
-
-        LoginView loginView = new LoginView(userManager, posController, authController);
+        LoginView loginView = new LoginView(storeContext);
         loginView.start(primaryStage);
         loginView.showLoginScreen();
     }
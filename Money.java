@@ -0,0 +1,114 @@
+/*
+ * Amounts of money are longs counting cents, from item prices through checkout, the stores and the reports,
+ * so sums are exact and adding up millions of them allocates nothing. This class holds the few operations
+ * that need care: reading an amount a user typed, older files' doubles, and formatting.
+ *
+ * Discounts stay whole currency units (an int), as loyalty points buy them; ofUnits turns one into cents.
+ */
+public final class Money {
+    private static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, CENTS_PER_UNIT);
+    }
+
+    // Only for amounts saved as doubles before money was kept in cents; rounds to the nearest cent.
+    public static long ofDouble(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static long times(long cents, int quantity) {
+        return Math.multiplyExact(cents, quantity);
+    }
+
+    // Reads "12", "12.5", "12.50", "-3.07" or "$1,299.99" exactly; more than two decimals is an error, not rounded.
+    public static long parse(String text) {
+        if (text == null) {
+            throw new NumberFormatException("null");
+        }
+        String trimmed = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (i < trimmed.length() && (trimmed.charAt(i) == '-' || trimmed.charAt(i) == '+')) {
+            negative = trimmed.charAt(i) == '-';
+            i++;
+        }
+        if (i < trimmed.length() && trimmed.charAt(i) == '$') {
+            i++;
+        }
+        long units = 0;
+        int unitDigits = 0;
+        for (; i < trimmed.length() && trimmed.charAt(i) != '.'; i++) {
+            char c = trimmed.charAt(i);
+            if (c == ',' && unitDigits > 0) {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+            units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+            unitDigits++;
+        }
+        long cents = 0;
+        int centDigits = 0;
+        if (i < trimmed.length()) {
+            for (i++; i < trimmed.length(); i++) {
+                char c = trimmed.charAt(i);
+                if (c < '0' || c > '9' || centDigits == 2) {
+                    throw new NumberFormatException("Not an amount: " + text);
+                }
+                cents = cents * 10 + (c - '0');
+                centDigits++;
+            }
+        }
+        if (unitDigits + centDigits == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        if (centDigits == 1) {
+            cents *= 10;
+        }
+        long amount = Math.addExact(ofUnits(units), cents);
+        return negative ? -amount : amount;
+    }
+
+    // Appends the amount as digits with two decimals, such as "-1234.05", without allocating.
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        // Long.MIN_VALUE has no positive counterpart, so the digits are taken from the negative side.
+        long negated = cents < 0 ? cents : -cents;
+        out.append(-(negated / CENTS_PER_UNIT)).append('.');
+        long fraction = -(negated % CENTS_PER_UNIT);
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    // "$12.34", or "-$12.34" for a negative amount.
+    public static StringBuilder appendWithSymbol(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        out.append('$');
+        int start = out.length();
+        appendTo(out, cents);
+        if (cents < 0) {
+            out.deleteCharAt(start);
+        }
+        return out;
+    }
+
+    // Digits only, as in an input field: "12.34".
+    public static String toPlainString(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    public static String format(long cents) {
+        return appendWithSymbol(new StringBuilder(24), cents).toString();
+    }
+}
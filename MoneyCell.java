@@ -0,0 +1,26 @@
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.util.Callback;
+
+/*
+ * Table cell for an amount in cents, shown as "$12.34". Each cell formats into its own buffer, which the
+ * table reuses as it scrolls, so no formatter is built per row.
+ */
+public class MoneyCell<S> extends TableCell<S, Long> {
+    private final StringBuilder text = new StringBuilder(24);
+
+    public static <S> Callback<TableColumn<S, Long>, TableCell<S, Long>> forTableColumn() {
+        return column -> new MoneyCell<>();
+    }
+
+    @Override
+    protected void updateItem(Long cents, boolean empty) {
+        super.updateItem(cents, empty);
+        if (empty || cents == null) {
+            setText(null);
+            return;
+        }
+        text.setLength(0);
+        setText(Money.appendWithSymbol(text, cents).toString());
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps a lane selling when it cannot reach the store. Sales go to the store directly while it answers;
+ * when it does not, they are written to the lane's SaleOutbox and acknowledged at once, and a background
+ * thread sends the queue to the store in batches of SYNC_BATCH once it answers again. While anything is
+ * queued, new sales are queued behind it so the store sees the lane's sales in order. Every sale carries
+ * its lane ID and sequence number, so one that reached the store before its reply was lost is not
+ * recorded twice.
+ *
+ * Lookups are answered from the last items and customers the store returned when it cannot be reached.
+ * Stock and loyalty points are shown with the queued sales taken off, until the store has them too.
+ * New customers cannot be added while offline, since the store assigns their IDs.
+ */
+public class OfflineCheckoutService implements CheckoutService {
+    private static final int SYNC_BATCH = 50;
+    private static final long SYNC_INTERVAL_SECONDS = 5;
+
+    private final CheckoutService store;
+    private final SaleOutbox outbox;
+    private final Map<String, InventoryItem> knownItems = new ConcurrentHashMap<>();
+    private final Map<Integer, Customer> knownCustomers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbox-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean online = true;
+
+    public OfflineCheckoutService(CheckoutService store, SaleOutbox outbox) {
+        this.store = store;
+        this.outbox = outbox;
+        syncer.scheduleWithFixedDelay(this::sync, 0, SYNC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public int getQueuedSaleCount() {
+        return outbox.size();
+    }
+
+    @Override
+    public boolean isReachable() {
+        return online;
+    }
+
+    @Override
+    public List<InventoryItem> getAllItems() {
+        if (online) {
+            List<InventoryItem> items = store.getAllItems();
+            if (store.isReachable()) {
+                knownItems.clear();
+                for (InventoryItem item : items) {
+                    knownItems.put(item.getSku(), copyOf(item));
+                }
+                if (outbox.isEmpty()) {
+                    return items;
+                }
+            } else {
+                online = false;
+            }
+        }
+        Map<String, Integer> queuedUnits = queuedUnits();
+        List<InventoryItem> items = new ArrayList<>(knownItems.size());
+        for (InventoryItem item : knownItems.values()) {
+            items.add(withQueuedSales(item, queuedUnits));
+        }
+        return items;
+    }
+
+    @Override
+    public InventoryItem findItemBySku(String sku) {
+        if (online) {
+            InventoryItem item = store.findItemBySku(sku);
+            if (store.isReachable()) {
+                if (item == null) {
+                    return null;
+                }
+                knownItems.put(item.getSku(), copyOf(item));
+                if (outbox.isEmpty()) {
+                    return item;
+                }
+            } else {
+                online = false;
+            }
+        }
+        InventoryItem known = sku == null ? null : knownItems.get(sku.trim());
+        return known == null ? null : withQueuedSales(known, queuedUnits());
+    }
+
+    @Override
+    public Customer findCustomer(int id) {
+        if (online) {
+            Customer customer = store.findCustomer(id);
+            if (store.isReachable()) {
+                return remember(customer);
+            }
+            online = false;
+        }
+        Customer known = knownCustomers.get(id);
+        return known == null ? null : withQueuedSales(known);
+    }
+
+    @Override
+    public Customer findCustomerByPhone(String phone) {
+        if (online) {
+            Customer customer = store.findCustomerByPhone(phone);
+            if (store.isReachable()) {
+                return remember(customer);
+            }
+            online = false;
+        }
+        for (Customer known : knownCustomers.values()) {
+            if (phone != null && phone.equals(known.getPhone())) {
+                return withQueuedSales(known);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Customer addCustomer(String name, String surname, String phone) {
+        Customer customer = store.addCustomer(name, surname, phone);
+        online = store.isReachable();
+        return remember(customer);
+    }
+
+    @Override
+    public CheckoutStatus checkout(User cashier, int customerId, List<SaleItem> items, long totalCost, int discount,
+                                   int pointsRedeemed) {
+        QueuedSale sale;
+        try {
+            sale = new QueuedSale(outbox.getLaneId(), outbox.nextSequence(), System.currentTimeMillis(),
+                    cashier.getUsername(), customerId, new ArrayList<>(items), totalCost, discount, pointsRedeemed);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CheckoutStatus.FAILED;
+        }
+        return checkout(sale);
+    }
+
+    // Sent straight to the store if it answers and nothing is queued; otherwise queued, checked only
+    // against the stock this lane last knew of.
+    @Override
+    public CheckoutStatus checkout(QueuedSale sale) {
+        if (online && outbox.isEmpty()) {
+            CheckoutStatus status = store.checkout(sale);
+            if (status != CheckoutStatus.FAILED) {
+                return status;
+            }
+            online = false;
+        }
+        if (!inStock(sale.getItems())) {
+            return CheckoutStatus.OUT_OF_STOCK;
+        }
+        try {
+            outbox.add(sale);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CheckoutStatus.FAILED;
+        }
+        syncer.execute(this::sync);
+        return CheckoutStatus.COMPLETED;
+    }
+
+    @Override
+    public boolean syncSales(List<QueuedSale> sales) {
+        return store.syncSales(sales);
+    }
+
+    // Runs on the sync thread only. Once the queue is empty the known items are refreshed, so the lane
+    // picks up what other lanes sold in the meantime.
+    private void sync() {
+        try {
+            boolean drained = false;
+            while (!outbox.isEmpty()) {
+                List<QueuedSale> batch = outbox.peek(SYNC_BATCH);
+                if (!store.syncSales(batch)) {
+                    online = false;
+                    return;
+                }
+                outbox.remove(batch.size());
+                drained = true;
+            }
+            if (drained || !online) {
+                List<InventoryItem> items = store.getAllItems();
+                if (store.isReachable()) {
+                    knownItems.clear();
+                    for (InventoryItem item : items) {
+                        knownItems.put(item.getSku(), copyOf(item));
+                    }
+                    online = true;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Tried again on the next run.
+            e.printStackTrace();
+        }
+    }
+
+    private boolean inStock(List<SaleItem> items) {
+        Map<String, Integer> queuedUnits = queuedUnits();
+        Map<String, Integer> requested = new HashMap<>();
+        for (SaleItem saleItem : items) {
+            requested.merge(saleItem.getItem().getSku(), saleItem.getAmount(), Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : requested.entrySet()) {
+            InventoryItem known = knownItems.get(entry.getKey());
+            if (known == null
+                    || known.getQuantity() - queuedUnits.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, Integer> queuedUnits() {
+        Map<String, Integer> units = new HashMap<>();
+        for (QueuedSale sale : outbox.getPending()) {
+            for (SaleItem saleItem : sale.getItems()) {
+                units.merge(saleItem.getItem().getSku(), saleItem.getAmount(), Integer::sum);
+            }
+        }
+        return units;
+    }
+
+    private Customer remember(Customer customer) {
+        if (customer == null) {
+            return null;
+        }
+        knownCustomers.put(customer.getId(),
+                new Customer(customer.getName(), customer.getSurname(), customer.getPhone(),
+                        customer.getLoyaltyPoints(), customer.getId()));
+        return outbox.isEmpty() ? customer : withQueuedSales(customer);
+    }
+
+    private Customer withQueuedSales(Customer customer) {
+        int points = customer.getLoyaltyPoints();
+        for (QueuedSale sale : outbox.getPending()) {
+            if (sale.getCustomerId() == customer.getId()) {
+                points += sale.getLoyaltyDelta();
+            }
+        }
+        return new Customer(customer.getName(), customer.getSurname(), customer.getPhone(), Math.max(0, points),
+                customer.getId());
+    }
+
+    private static InventoryItem withQueuedSales(InventoryItem item, Map<String, Integer> queuedUnits) {
+        InventoryItem copy = copyOf(item);
+        copy.setQuantity(item.getQuantity() - queuedUnits.getOrDefault(item.getSku(), 0));
+        return copy;
+    }
+
+    // Only the fields a lane uses, as CheckoutProtocol sends them.
+    private static InventoryItem copyOf(InventoryItem item) {
+        InventoryItem copy = new InventoryItem(item.getName(), item.getCategory(), item.getPrice(),
+                item.getQuantity(), item.getSupplier(), 0, 0);
+        copy.setSku(item.getSku());
+        return copy;
+    }
+}
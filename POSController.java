@@ -1,18 +1,36 @@
 
 import java.util.ArrayList;
+import java.util.Date;
 
 public class POSController {
     private POSSystem posSystem;
     private InventoryManager inventoryManager;
 
 
-    public POSController(InventoryManager inventoryManager) {
-        posSystem = new POSSystem();
+    public POSController(POSSystem posSystem, InventoryManager inventoryManager) {
+        this.posSystem = posSystem;
         this.inventoryManager = inventoryManager;
     }
 
-    public void processTransaction(ArrayList<SaleItem> items, User cashier, int id, double total, int discount) {
-        Transaction transaction = new Transaction(cashier, id, total, discount, items, posSystem.getAllTransactions());
-        posSystem.addTransaction(transaction);
+    // False if the transaction could not be stored.
+    public boolean processTransaction(ArrayList<SaleItem> items, User cashier, int id, long total, int discount) {
+        return processTransaction(items, cashier, id, total, discount, null);
+    }
+
+    // saleDate is when a lane made a sale it could only send later, or null for a sale made now.
+    public boolean processTransaction(ArrayList<SaleItem> items, User cashier, int id, long total, int discount,
+                                      Date saleDate) {
+        return processTransaction(items, cashier, id, total, discount, saleDate, null, 0);
+    }
+
+    // For a sale a lane tagged; the tag is stored with the transaction.
+    public boolean processTransaction(ArrayList<SaleItem> items, User cashier, int id, long total, int discount,
+                                      Date saleDate, String laneId, long laneSequence) {
+        return posSystem.addTransaction(items, cashier, id, total, discount, saleDate, laneId, laneSequence);
+    }
+
+    // Points a customer earns for a sale, as credited at checkout: one for every ten whole units of the total.
+    public static int loyaltyPointsFor(long totalCents) {
+        return (int) (totalCents / Money.ofUnits(10));
     }
 }
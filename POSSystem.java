@@ -1,104 +1,418 @@
-
 import java.io.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class POSSystem {
-    private ArrayList<Transaction> transactions;
-    private final String filePath = "transactions.bin";
+    private static final int AGGREGATE_SAVE_INTERVAL = 100;
+    private static final int DAY_CLOSE_INTERVAL_MINUTES = 60;
+    private final TransactionStore store;
+    private final CustomerTransactionIndex customerIndex;
+    private final ReportEngine reportEngine;
+    private final ReportCache reportCache;
+    private final TransactionIdAllocator idAllocator;
+    private final TransactionJournal legacySnapshot;
+    private final TransactionJournal legacyJournal;
+    private final String legacyFilePath = "transactions.bin";
+    private final File aggregatesFile = new File("transactions", "aggregates.bin");
+    private SalesAggregates salesAggregates;
+    private int unsavedAggregates;
+    private long aggregatesDay = Long.MIN_VALUE;
+    private final Object aggregatesLock = new Object();
+    private Runnable changeListener = () -> {};
+    private EventRing<StoreEvent> events;
+    private final ScheduledExecutorService dayCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "day-close");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public POSSystem() {
-        transactions = new ArrayList<>();
+    public POSSystem(InventoryManager inventoryManager) {
+        TransactionCodec codec = TransactionCodec.create(inventoryManager);
+        store = new TransactionStore("transactions", codec);
+        customerIndex = new CustomerTransactionIndex("transactions" + File.separator + "customers.idx", store);
+        reportEngine = new ReportEngine(store);
+        reportCache = new ReportCache("transactions" + File.separator + "reports");
+        legacySnapshot = new TransactionJournal("transactions.dat", codec);
+        legacyJournal = new TransactionJournal("transactions.journal", codec);
         loadTransactions();
+        idAllocator = new TransactionIdAllocator("transactions" + File.separator + "sequence.bin", store.getHighestTransactionID() + 1);
+        loadSalesAggregates();
+        closePendingDays();
+        // Past days are closed in the background, never by a checkout: the first sale after midnight would
+        // otherwise hold up every lane while yesterday is read.
+        dayCloser.scheduleAtFixedRate(this::closePendingDaysInBackground, DAY_CLOSE_INTERVAL_MINUTES,
+                DAY_CLOSE_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
-    public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        saveTransactions();
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
     }
 
-    private void saveTransactions() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(transactions);
-        } catch (IOException e) {
-            e.printStackTrace();
+    // With an event ring, the sales counters and report cache are brought up to date by a processor
+    // calling onEvent, and views hear of new transactions from the ring rather than the change listener.
+    public void setEventRing(EventRing<StoreEvent> events) {
+        this.events = events;
+    }
+
+    // Numbers and dates the sale, then stores it. The ID and the date are taken under the lock the append
+    // holds, so one terminal's transactions are stored, indexed and published in ID and time order.
+    // saleDate is set for a late sale; see Transaction.getSaleDate. laneId and laneSequence are stored with
+    // a tagged sale, in the same record, so the store itself knows which sales each lane has had recorded.
+    //
+    // Returns once the transaction is in the store and the customer index; with an event ring, the counters
+    // and the report cache follow shortly after. False if it could not be written to the store (a full disk,
+    // say), in which case nothing else has heard of it.
+    public synchronized boolean addTransaction(ArrayList<SaleItem> items, User cashier, int buyerID, long totalCost,
+                                               int discount, Date saleDate, String laneId, long laneSequence) {
+        Transaction transaction = new Transaction(idAllocator.next(), new Date(), cashier, buyerID, totalCost,
+                discount, items, saleDate, laneId, laneSequence);
+        long position = store.append(transaction);
+        if (position < 0) {
+            return false;
+        }
+        customerIndex.add(transaction, position);
+        if (events != null) {
+            events.publish(event -> event.transactionCommitted(transaction));
+        } else {
+            transactionCommitted(transaction);
+            changeListener.run();
+        }
+        return true;
+    }
+
+    // Ledger processor for the event ring.
+    public void onEvent(StoreEvent event, boolean endOfBatch) {
+        if (event.getType() == StoreEvent.Type.TRANSACTION_COMMITTED) {
+            transactionCommitted(event.getTransaction());
         }
     }
 
-    @SuppressWarnings("unchecked")
+    private void transactionCommitted(Transaction transaction) {
+        updateSalesAggregates(transaction);
+        reportCache.transactionAdded(transaction);
+    }
+
+    // Older installs kept the whole history in one file; it is split into day segments once.
+    // The old files are left in place.
     private void loadTransactions() {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
-            Object data = in.readObject();
-            if (data instanceof ArrayList<?>) {
-                this.transactions = (ArrayList<Transaction>) data;
+        if (store.exists()) {
+            return;
+        }
+        ArrayList<Transaction> history;
+        if (legacySnapshot.exists() || legacyJournal.exists()) {
+            history = legacySnapshot.replay();
+            int lastSnapshotID = history.isEmpty() ? 0 : history.get(history.size() - 1).getTransactionID();
+            for (Transaction transaction : legacyJournal.replay()) {
+                if (transaction.getTransactionID() > lastSnapshotID) {
+                    history.add(transaction);
+                }
             }
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
+        } else if (new File(legacyFilePath).exists()) {
+            history = TransactionFileConverter.readLegacy(legacyFilePath);
+        } else {
+            history = new ArrayList<>();
         }
+        store.importTransactions(history);
     }
 
-    public ArrayList<Transaction> getAllTransactions() {
-        return transactions;
+    // The saved counters can lag the store by the sales made since the last save; those are applied on load.
+    // If they claim records the store does not have, or were saved without their place in the store, they
+    // are rebuilt from the whole history.
+    private void loadSalesAggregates() {
+        salesAggregates = SalesAggregates.load(aggregatesFile);
+        TransactionStore.SegmentInfo applied = store.getManifest().get(salesAggregates.getAppliedDay());
+        if (salesAggregates.isPlaceUnknown() || salesAggregates.getAppliedCount() > 0
+                && (applied == null || applied.getCount() < salesAggregates.getAppliedCount())) {
+            salesAggregates = new SalesAggregates();
+        }
+        long savedDay = salesAggregates.getAppliedDay();
+        int savedCount = salesAggregates.getAppliedCount();
+        try (Stream<Transaction> missing = store.streamAfter(savedDay, savedCount)) {
+            missing.forEach(salesAggregates::add);
+        }
+        if (salesAggregates.getAppliedDay() != savedDay || salesAggregates.getAppliedCount() != savedCount) {
+            salesAggregates.save(aggregatesFile);
+        }
     }
 
-
-    public ArrayList<Transaction> createDailyReport(Date date) {
-        ArrayList<Transaction> dailyTransactions = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            if (isSameDay(transaction.getDate(), date)) {
-                dailyTransactions.add(transaction);
+    // Rewriting the counters on every sale would cost more than the sale itself, so they are saved every
+    // AGGREGATE_SAVE_INTERVAL sales and whenever the day changes.
+    private void updateSalesAggregates(Transaction transaction) {
+        synchronized (aggregatesLock) {
+            salesAggregates.add(transaction);
+            long day = TransactionStore.epochDay(transaction.getDate());
+            if (++unsavedAggregates >= AGGREGATE_SAVE_INTERVAL || day != aggregatesDay) {
+                salesAggregates.save(aggregatesFile);
+                unsavedAggregates = 0;
+                aggregatesDay = day;
             }
         }
-        return dailyTransactions;
     }
 
-    private boolean isSameDay(Date date1, Date date2) {
-        Calendar cal1 = Calendar.getInstance();
-        cal1.setTime(date1);
-        Calendar cal2 = Calendar.getInstance();
-        cal2.setTime(date2);
-        return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                cal1.get(Calendar.MONTH) == cal2.get(Calendar.MONTH) &&
-                cal1.get(Calendar.DAY_OF_MONTH) == cal2.get(Calendar.DAY_OF_MONTH);
+    // Holds off new transactions while it runs, and first lets the ring apply the ones already published,
+    // so each transaction is counted exactly once.
+    public synchronized void rebuildSalesAggregates() {
+        if (events != null) {
+            events.awaitIdle();
+        }
+        SalesAggregates rebuilt = new SalesAggregates();
+        try (Stream<Transaction> transactions = store.stream()) {
+            transactions.forEach(rebuilt::add);
+        }
+        synchronized (aggregatesLock) {
+            salesAggregates = rebuilt;
+            salesAggregates.save(aggregatesFile);
+            unsavedAggregates = 0;
+        }
     }
 
+    // Count, takings and discount per cashier username. The maps are copies, since the counters can be
+    // updated from the event ring while a view reads them.
+    public Map<String, SalesAggregates.Counter> getDailySales(Date date) {
+        synchronized (aggregatesLock) {
+            return SalesAggregates.copyOf(salesAggregates.getDay(TransactionStore.epochDay(date)));
+        }
+    }
 
-    public ArrayList<Transaction> createMonthlyReport(int year, int month) {
-        ArrayList<Transaction> monthlyTransactions = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            Date transactionDate = transaction.getDate();
-            if (isSameMonthAndYear(transactionDate, year, month)) {
-                monthlyTransactions.add(transaction);
+    // month is zero-based, as in Calendar.MONTH.
+    public Map<String, SalesAggregates.Counter> getMonthlySales(int year, int month) {
+        synchronized (aggregatesLock) {
+            return SalesAggregates.copyOf(salesAggregates.getMonth(year, month));
+        }
+    }
+
+    public Map<String, SalesAggregates.Counter> getYearlySales(int year) {
+        synchronized (aggregatesLock) {
+            return SalesAggregates.copyOf(salesAggregates.getYear(year));
+        }
+    }
+
+    // Both days inclusive. The summary is built on the common fork/join pool; the future completes there.
+    public CompletableFuture<SalesSummary> summarizeSales(LocalDate from, LocalDate to) {
+        return reportEngine.summarize(segments(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    public CompletableFuture<SalesSummary> summarizeAllSales() {
+        return reportEngine.summarize(segments(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    // Served from the report cache when the period has been summarized before and has not changed since.
+    public CompletableFuture<SalesSummary> summarizePeriod(ReportCache.Period period) {
+        SalesSummary cached = reportCache.get(period);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long version = reportCache.getVersion();
+        return reportEngine.summarize(segments(period.getStart().toEpochDay(), period.getEnd().toEpochDay()))
+                .thenApply(summary -> {
+                    reportCache.put(period, summary, version);
+                    return summary;
+                });
+    }
+
+    public String getReportCacheStatistics() {
+        return reportCache.getStatistics();
+    }
+
+    // End-of-day close (Z-report): summarizes the day's transactions once, stores the summary beside the
+    // day's segment and seals the segment. Only days before today can be closed. Returns the day's summary,
+    // the stored one if it was already closed, or null if the day is today or later.
+    //
+    // The day is read without the append lock, so lanes keep checking out meanwhile; only sealing, which
+    // changes the manifest and may drop the segment open for appends, takes it. Reads the whole day, so call
+    // it off the FX thread.
+    public SalesSummary closeDay(LocalDate date) {
+        long day = date.toEpochDay();
+        if (day >= LocalDate.now().toEpochDay()) {
+            return null;
+        }
+        while (true) {
+            TransactionStore.SegmentInfo info = segmentInfo(day);
+            if (info == null) {
+                return new SalesSummary();
+            }
+            if (info.isSealed()) {
+                SalesSummary stored = store.readDaySummary(day);
+                if (stored != null) {
+                    return stored;
+                }
+            }
+            SalesSummary summary = new SalesSummary();
+            store.forEachInSegment(day, info.getCount(), summary::add);
+            synchronized (this) {
+                // A sale lands on a past day only if the clock was set back; the day is then read again.
+                if (store.getManifest().get(day).getCount() == info.getCount()) {
+                    store.sealDay(day, summary);
+                    return summary;
+                }
             }
         }
-        return monthlyTransactions;
     }
 
-    private boolean isSameMonthAndYear(Date date, int year, int month) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        return cal.get(Calendar.YEAR) == year && cal.get(Calendar.MONTH) == month;
+    // Runs at startup and then every DAY_CLOSE_INTERVAL_MINUTES, so past days are closed even if nobody
+    // does it by hand.
+    public void closePendingDays() {
+        for (long day : unsealedDaysBefore(LocalDate.now().toEpochDay())) {
+            closeDay(LocalDate.ofEpochDay(day));
+        }
     }
 
-    public ArrayList<Transaction> createYearlyReport(int year) {
-        ArrayList<Transaction> yearlyTransactions = new ArrayList<>();
-        for (Transaction transaction : transactions) {
-            Date transactionDate = transaction.getDate();
-            if (isSameYear(transactionDate, year)) {
-                yearlyTransactions.add(transaction);
+    // An exception would cancel the schedule, so it is only reported.
+    private void closePendingDaysInBackground() {
+        try {
+            closePendingDays();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized List<Long> unsealedDaysBefore(long day) {
+        List<Long> days = new ArrayList<>();
+        for (Map.Entry<Long, TransactionStore.SegmentInfo> entry : store.getManifest().headMap(day).entrySet()) {
+            if (!entry.getValue().isSealed()) {
+                days.add(entry.getKey());
             }
         }
-        return yearlyTransactions;
+        return days;
+    }
+
+    // A copy, taken under the append lock.
+    private synchronized TransactionStore.SegmentInfo segmentInfo(long day) {
+        TransactionStore.SegmentInfo info = store.getManifest().get(day);
+        return info == null ? null : info.copy();
+    }
+
+    public synchronized boolean isDayClosed(LocalDate date) {
+        TransactionStore.SegmentInfo info = store.getManifest().get(date.toEpochDay());
+        return info != null && info.isSealed();
     }
 
-    private boolean isSameYear(Date date, int year) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        return cal.get(Calendar.YEAR) == year;
+    public List<Transaction> getTransactionsForCustomer(int customerId) {
+        return customerIndex.getTransactions(customerId);
     }
 
+    // In cents.
+    public long getCustomerLifetimeSpend(int customerId) {
+        return customerIndex.getLifetimeSpend(customerId);
+    }
+
+    // The highest ID stored; with terminals sharing the store it need not be the newest transaction's.
+    public synchronized int getHighestTransactionID() {
+        return store.getHighestTransactionID();
+    }
 
+    public synchronized int getTransactionCount() {
+        return store.size();
+    }
+
+    // Rows for the Sales Reports table, read from the store a page at a time as they are shown. The store
+    // order (by date) is ready at once; filtering by cashier or sorting by anything else reads the segments
+    // of the period on the common fork/join pool, and the future completes there. Sales made after the call
+    // are not included.
+    public CompletableFuture<List<Transaction>> queryTransactions(TransactionQuery query) {
+        Map<Long, Integer> counts = segmentCounts(query.getFromDay(), query.getToDay());
+        if (query.isInStoreOrder()) {
+            return CompletableFuture.completedFuture(PagedTransactionList.inStoreOrder(store, counts, query.isDescending()));
+        }
+        return CompletableFuture.supplyAsync(() -> PagedTransactionList.sortedRows(store, counts, query));
+    }
+
+    // Copies, taken under the lock addTransaction holds: lanes append and open new days on their own threads
+    // while reports are asked for on the FX thread.
+    private synchronized TreeMap<Long, TransactionStore.SegmentInfo> segments(long fromDay, long toDay) {
+        TreeMap<Long, TransactionStore.SegmentInfo> segments = new TreeMap<>();
+        for (Map.Entry<Long, TransactionStore.SegmentInfo> entry : store.getManifest().subMap(fromDay, true, toDay, true).entrySet()) {
+            segments.put(entry.getKey(), entry.getValue().copy());
+        }
+        return segments;
+    }
+
+    // Taken under the lock addTransaction holds, so every record counted is completely written.
+    private synchronized Map<Long, Integer> segmentCounts(long fromDay, long toDay) {
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Long, TransactionStore.SegmentInfo> entry : store.getManifest().subMap(fromDay, true, toDay, true).entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    // Decodes the history stored when called on demand; use in a try-with-resources block so the segment
+    // files are closed.
+    public Stream<Transaction> streamTransactions() {
+        return store.streamSegments(segmentCounts(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    // The transactions stored when called in the segments of fromDay and after, oldest first. Close the
+    // stream when done with it.
+    public Stream<Transaction> streamTransactionsFrom(long fromDay) {
+        return store.streamSegments(segmentCounts(fromDay, Long.MAX_VALUE));
+    }
 
 
+    // Transactions with from <= date < to, oldest first. Close the stream when done with it.
+    public Stream<Transaction> getTransactionsBetween(Date from, Date to) {
+        return streamRange(from.getTime(), to.getTime());
+    }
+
+    public int countTransactionsBetween(Date from, Date to) {
+        if (from.getTime() >= to.getTime()) {
+            return 0;
+        }
+        Map<Long, Integer> counts = segmentCounts(TransactionStore.epochDay(from), TransactionStore.epochDay(to.getTime() - 1));
+        return store.countRange(counts, from.getTime(), to.getTime());
+    }
+
+    public ArrayList<Transaction> createDailyReport(Date date) {
+        LocalDate day = LocalDate.ofEpochDay(TransactionStore.epochDay(date));
+        return collectRange(day, day.plusDays(1));
+    }
+
+    // month is zero-based, as in Calendar.MONTH.
+    public ArrayList<Transaction> createMonthlyReport(int year, int month) {
+        LocalDate first = LocalDate.of(year, month + 1, 1);
+        return collectRange(first, first.plusMonths(1));
+    }
+
+    public ArrayList<Transaction> createYearlyReport(int year) {
+        LocalDate first = LocalDate.of(year, 1, 1);
+        return collectRange(first, first.plusYears(1));
+    }
+
+    // Best sellers by units for from..to inclusive, found in one pass with a fixed number of counters
+    // (ten per requested row) rather than a count for every item. Counts may be overstated by the entry's
+    // error, which is shown alongside. Reads the period's segments, so call it off the FX thread; sales made
+    // meanwhile are not counted.
+    public List<TopSellers.Entry> getTopSellers(LocalDate from, LocalDate to, int n) {
+        TopSellers topSellers = new TopSellers(Math.max(10 * n, 100));
+        try (Stream<Transaction> transactions = streamRange(TransactionStore.startOfDay(from), TransactionStore.startOfDay(to.plusDays(1)))) {
+            transactions.forEach(topSellers::add);
+        }
+        return topSellers.top(n);
+    }
+
+    private ArrayList<Transaction> collectRange(LocalDate from, LocalDate to) {
+        try (Stream<Transaction> transactions = streamRange(TransactionStore.startOfDay(from), TransactionStore.startOfDay(to))) {
+            return transactions.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    // The records stored when called with fromMillis <= time < toMillis; safe on any thread, as the segment
+    // counts are taken under the append lock and the store reads no further than them.
+    private Stream<Transaction> streamRange(long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            return Stream.empty();
+        }
+        Map<Long, Integer> counts = segmentCounts(TransactionStore.epochDay(fromMillis), TransactionStore.epochDay(toMillis - 1));
+        return store.streamRange(counts, fromMillis, toMillis);
+    }
 }
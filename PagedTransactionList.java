@@ -0,0 +1,173 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Read-only list of the rows a TransactionQuery selects, behind the Sales Reports table. It only knows
+ * where each row is stored: rows are read from the store PAGE_SIZE at a time, the first time one of them is
+ * asked for, and the last PAGE_CACHE_SIZE pages are kept. A table only asks for the rows on screen, so
+ * scrolling through millions of rows never holds more than a few thousand.
+ *
+ * Rows in store order are runs of records, one per segment, and cost nothing to set up. Any other order
+ * is built by sortedRows, which decodes the segments once to pick and sort the rows and keeps only their
+ * positions. Either way the rows are those stored when the list was made; make a new one to see later sales.
+ */
+public class PagedTransactionList extends AbstractList<Transaction> {
+    static final int PAGE_SIZE = 200;
+    private static final int PAGE_CACHE_SIZE = 50;
+
+    private final TransactionStore store;
+    // Set for sorted rows: the position of each row.
+    private final long[] positions;
+    // Otherwise the rows from starts[i] on are the records of segment days[i].
+    private final long[] days;
+    private final int[] starts;
+    private final boolean descending;
+    private final int size;
+    private final Map<Integer, List<Transaction>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+            return size() > PAGE_CACHE_SIZE;
+        }
+    };
+
+    private PagedTransactionList(TransactionStore store, long[] positions, long[] days, int[] starts,
+                                 boolean descending, int size) {
+        this.store = store;
+        this.positions = positions;
+        this.days = days;
+        this.starts = starts;
+        this.descending = descending;
+        this.size = size;
+    }
+
+    // counts holds the record count of each segment to show, by epoch day.
+    public static PagedTransactionList inStoreOrder(TransactionStore store, Map<Long, Integer> counts,
+                                                    boolean descending) {
+        long[] days = new long[counts.size()];
+        int[] starts = new int[counts.size()];
+        int i = 0;
+        int total = 0;
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            days[i] = entry.getKey();
+            starts[i] = total;
+            total += entry.getValue();
+            i++;
+        }
+        return new PagedTransactionList(store, null, days, starts, descending, total);
+    }
+
+    // Reads the first counts.get(day) records of each segment and keeps the positions of those the query
+    // matches, sorted by its key. Reads every record of those segments, so call it off the FX thread.
+    public static PagedTransactionList sortedRows(TransactionStore store, Map<Long, Integer> counts,
+                                                  TransactionQuery query) {
+        int capacity = 0;
+        for (int count : counts.values()) {
+            capacity += count;
+        }
+        long[] found = new long[capacity];
+        long[] numberKeys = query.getSortKey() == TransactionQuery.SortKey.CASHIER ? null : new long[capacity];
+        String[] nameKeys = numberKeys == null ? new String[capacity] : null;
+        int[] size = new int[1];
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            store.forEachRecordInSegment(entry.getKey(), entry.getValue(), (transaction, position) -> {
+                if (!query.matches(transaction)) {
+                    return;
+                }
+                int row = size[0]++;
+                found[row] = position;
+                switch (query.getSortKey()) {
+                    case ID -> numberKeys[row] = transaction.getTransactionID();
+                    case DATE -> numberKeys[row] = transaction.getDate().getTime();
+                    case TOTAL -> numberKeys[row] = transaction.getTotalCost();
+                    case CASHIER -> nameKeys[row] = transaction.getCashier() == null ? ""
+                            : transaction.getCashier().getUsername();
+                }
+            });
+        }
+
+        Integer[] order = new Integer[size[0]];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Comparator<Integer> byKey = numberKeys != null
+                ? Comparator.comparingLong(row -> numberKeys[row])
+                : Comparator.comparing(row -> nameKeys[row], String.CASE_INSENSITIVE_ORDER);
+        // Arrays.sort is stable for objects, so equal keys keep store order; descending is that order reversed,
+        // as in store order.
+        Arrays.sort(order, byKey);
+
+        long[] sorted = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[query.isDescending() ? order.length - 1 - i : i] = found[order[i]];
+        }
+        return new PagedTransactionList(store, sorted, null, null, false, sorted.length);
+    }
+
+    @Override
+    public Transaction get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        List<Transaction> page = pages.computeIfAbsent(index / PAGE_SIZE, this::readPage);
+        return page.get(index % PAGE_SIZE);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private List<Transaction> readPage(int page) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(size, from + PAGE_SIZE);
+        long[] rowPositions = positions != null ? Arrays.copyOfRange(positions, from, to) : storeOrderPositions(from, to);
+
+        // The store reads a segment in one forward pass, so the positions are read in ascending order
+        // and put back in row order afterwards.
+        long[] ascending = rowPositions.clone();
+        Arrays.sort(ascending);
+        ArrayList<Transaction> read = store.read(ascending, ascending.length);
+        List<Transaction> rows = new ArrayList<>(rowPositions.length);
+        for (long position : rowPositions) {
+            rows.add(read.get(Arrays.binarySearch(ascending, position)));
+        }
+        return rows;
+    }
+
+    private long[] storeOrderPositions(int from, int to) {
+        // Descending rows are the same records counted from the end.
+        int first = descending ? size - to : from;
+        int last = descending ? size - from : to;
+        long[] result = new long[last - first];
+        int filled = 0;
+        int segment = Arrays.binarySearch(starts, first);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        for (int row = first; row < last; segment++) {
+            int segmentEnd = segment + 1 < starts.length ? starts[segment + 1] : size;
+            if (segmentEnd <= row) {
+                // Empty segment.
+                continue;
+            }
+            int end = Math.min(last, segmentEnd);
+            long[] segmentPositions = store.positionsInSegment(days[segment], row - starts[segment], end - starts[segment]);
+            System.arraycopy(segmentPositions, 0, result, filled, segmentPositions.length);
+            filled += segmentPositions.length;
+            row = end;
+        }
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long swap = result[i];
+                result[i] = result[j];
+                result[j] = swap;
+            }
+        }
+        return result;
+    }
+}
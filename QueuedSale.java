@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+
+/*
+ * A sale as a lane sends it to the store, tagged with the lane's ID and a sequence number. Sequence numbers
+ * only grow within a lane, so the store can tell a resent sale from a new one by remembering the highest
+ * number it has recorded.
+ *
+ * It holds only what the store needs to record the sale: the cashier's username, the customer, the lines
+ * (only their items' SKUs are used), the amounts and the time the lane made it. The store assigns the
+ * transaction ID when it records it.
+ */
+public class QueuedSale {
+    private final String laneId;
+    private final long sequence;
+    private final long saleTime;
+    private final String cashier;
+    private final int customerId;
+    private final ArrayList<SaleItem> items;
+    private final long totalCost;
+    private final int discount;
+    private final int pointsRedeemed;
+
+    public QueuedSale(String laneId, long sequence, long saleTime, String cashier, int customerId,
+                      ArrayList<SaleItem> items, long totalCost, int discount, int pointsRedeemed) {
+        this.laneId = laneId;
+        this.sequence = sequence;
+        this.saleTime = saleTime;
+        this.cashier = cashier;
+        this.customerId = customerId;
+        this.items = items;
+        this.totalCost = totalCost;
+        this.discount = discount;
+        this.pointsRedeemed = pointsRedeemed;
+    }
+
+    public String getLaneId() {
+        return laneId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Epoch milliseconds.
+    public long getSaleTime() {
+        return saleTime;
+    }
+
+    // The username only.
+    public String getCashier() {
+        return cashier;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public ArrayList<SaleItem> getItems() {
+        return items;
+    }
+
+    // In cents.
+    public long getTotalCost() {
+        return totalCost;
+    }
+
+    public int getDiscount() {
+        return discount;
+    }
+
+    public int getPointsRedeemed() {
+        return pointsRedeemed;
+    }
+
+    // What the sale does to the customer's balance once the store records it.
+    public int getLoyaltyDelta() {
+        return POSController.loyaltyPointsFor(totalCost) - pointsRedeemed;
+    }
+}
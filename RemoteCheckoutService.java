@@ -0,0 +1,212 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Thin-client CheckoutService: every call is one request/response round trip to a CheckoutServer over a
+ * single kept-open connection. If the connection has broken, lookups and tagged sales reopen it and try
+ * once more; an untagged checkout or new customer is not resent, since the server may already have applied
+ * it. Like the managers, failures are printed and reported as an empty or null result, or FAILED for a
+ * checkout; isReachable tells a lane which of those meant the server could not be reached.
+ *
+ * Returned items and customers are copies of the server's; changing them changes nothing on the server.
+ */
+public class RemoteCheckoutService implements CheckoutService {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private volatile boolean reachable = true;
+
+    public RemoteCheckoutService(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    // "host:port", or just "host" for the default port.
+    public static RemoteCheckoutService forAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new RemoteCheckoutService(address, CheckoutServer.DEFAULT_PORT);
+        }
+        return new RemoteCheckoutService(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    @Override
+    public List<InventoryItem> getAllItems() {
+        try {
+            DataInputStream result = call(request(CheckoutProtocol.LIST_ITEMS));
+            int count = result.readInt();
+            List<InventoryItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(CheckoutProtocol.readItem(result));
+            }
+            return items;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public InventoryItem findItemBySku(String sku) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.FIND_ITEM_BY_SKU);
+            new DataOutputStream(bytes).writeUTF(sku == null ? "" : sku.trim());
+            return CheckoutProtocol.readItem(call(bytes));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public Customer findCustomer(int id) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.FIND_CUSTOMER);
+            new DataOutputStream(bytes).writeInt(id);
+            return CheckoutProtocol.readCustomer(call(bytes));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public Customer findCustomerByPhone(String phone) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.FIND_CUSTOMER_BY_PHONE);
+            new DataOutputStream(bytes).writeUTF(phone == null ? "" : phone);
+            return CheckoutProtocol.readCustomer(call(bytes));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public Customer addCustomer(String name, String surname, String phone) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.ADD_CUSTOMER);
+            DataOutputStream args = new DataOutputStream(bytes);
+            args.writeUTF(name);
+            args.writeUTF(surname);
+            args.writeUTF(phone);
+            return CheckoutProtocol.readCustomer(call(bytes, false));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public CheckoutStatus checkout(User cashier, int customerId, List<SaleItem> items, long totalCost, int discount,
+                                   int pointsRedeemed) {
+        QueuedSale sale = new QueuedSale("", 0, System.currentTimeMillis(), cashier.getUsername(), customerId,
+                new ArrayList<>(items), totalCost, discount, pointsRedeemed);
+        return checkout(sale, false);
+    }
+
+    @Override
+    public CheckoutStatus checkout(QueuedSale sale) {
+        return checkout(sale, true);
+    }
+
+    @Override
+    public boolean syncSales(List<QueuedSale> sales) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.SYNC_SALES);
+            DataOutputStream args = new DataOutputStream(bytes);
+            args.writeInt(sales.size());
+            for (QueuedSale sale : sales) {
+                CheckoutProtocol.writeSale(args, sale);
+            }
+            return call(bytes).readBoolean();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    private CheckoutStatus checkout(QueuedSale sale, boolean retry) {
+        try {
+            ByteArrayOutputStream bytes = request(CheckoutProtocol.CHECKOUT);
+            CheckoutProtocol.writeSale(new DataOutputStream(bytes), sale);
+            return CheckoutStatus.values()[call(bytes, retry).readByte()];
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CheckoutStatus.FAILED;
+        }
+    }
+
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            socket = null;
+        }
+    }
+
+    private static ByteArrayOutputStream request(byte op) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(op);
+        return bytes;
+    }
+
+    private DataInputStream call(ByteArrayOutputStream request) throws IOException {
+        return call(request, true);
+    }
+
+    // Sends one request frame and returns the result part of the response.
+    private synchronized DataInputStream call(ByteArrayOutputStream request, boolean retry) throws IOException {
+        DataInputStream response;
+        try {
+            try {
+                response = exchange(request.toByteArray());
+            } catch (IOException e) {
+                close();
+                if (!retry) {
+                    throw e;
+                }
+                response = exchange(request.toByteArray());
+            }
+        } catch (IOException e) {
+            close();
+            reachable = false;
+            throw e;
+        }
+        reachable = true;
+        if (response.readByte() != CheckoutProtocol.OK) {
+            throw new IOException("Server error: " + response.readUTF());
+        }
+        return response;
+    }
+
+    private DataInputStream exchange(byte[] payload) throws IOException {
+        if (socket == null) {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+        CheckoutProtocol.writeFrame(out, payload);
+        return CheckoutProtocol.readFrame(in);
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Sales summaries by (period type, period). A closed period - one that ended before today - cannot gain
+ * transactions, so its summary is kept for good: in a bounded in-memory LRU and as a file under the cache
+ * directory. The open period is only kept in memory and is dropped whenever a transaction falls into it.
+ *
+ * Summaries are computed off the UI thread, so a put carries the version seen when the computation
+ * started; if the period was invalidated in the meantime the result is stale and is not stored.
+ */
+public class ReportCache {
+    private static final int MEMORY_ENTRIES = 64;
+
+    public enum PeriodType {
+        DAY, MONTH, YEAR
+    }
+
+    public static final class Period {
+        private final PeriodType type;
+        private final LocalDate start;
+
+        private Period(PeriodType type, LocalDate start) {
+            this.type = type;
+            this.start = start;
+        }
+
+        // The period of the given type that contains date.
+        public static Period of(PeriodType type, LocalDate date) {
+            switch (type) {
+                case MONTH:
+                    return new Period(type, date.withDayOfMonth(1));
+                case YEAR:
+                    return new Period(type, date.withDayOfYear(1));
+                default:
+                    return new Period(type, date);
+            }
+        }
+
+        public PeriodType getType() {
+            return type;
+        }
+
+        public LocalDate getStart() {
+            return start;
+        }
+
+        // Inclusive.
+        public LocalDate getEnd() {
+            return next().start.minusDays(1);
+        }
+
+        public Period next() {
+            return new Period(type, start.plus(1, unit()));
+        }
+
+        public Period previous() {
+            return new Period(type, start.minus(1, unit()));
+        }
+
+        private ChronoUnit unit() {
+            switch (type) {
+                case MONTH:
+                    return ChronoUnit.MONTHS;
+                case YEAR:
+                    return ChronoUnit.YEARS;
+                default:
+                    return ChronoUnit.DAYS;
+            }
+        }
+
+        public boolean contains(LocalDate date) {
+            return !date.isBefore(start) && !date.isAfter(getEnd());
+        }
+
+        public boolean isClosed() {
+            return getEnd().isBefore(LocalDate.now());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Period)) {
+                return false;
+            }
+            Period other = (Period) o;
+            return type == other.type && start.equals(other.start);
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + start.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case MONTH:
+                    return String.format("%04d-%02d", start.getYear(), start.getMonthValue());
+                case YEAR:
+                    return String.format("%04d", start.getYear());
+                default:
+                    return start.toString();
+            }
+        }
+    }
+
+    private final File directory;
+    private final Map<Period, SalesSummary> memory = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Period, SalesSummary> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+    private long version;
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    public ReportCache(String directoryPath) {
+        this.directory = new File(directoryPath);
+    }
+
+    public synchronized SalesSummary get(Period period) {
+        SalesSummary summary = memory.get(period);
+        if (summary != null) {
+            memoryHits++;
+            return summary;
+        }
+        if (period.isClosed()) {
+            summary = readFromDisk(period);
+            if (summary != null) {
+                diskHits++;
+                memory.put(period, summary);
+                return summary;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void put(Period period, SalesSummary summary, long startedAtVersion) {
+        if (startedAtVersion != version && !period.isClosed()) {
+            return;
+        }
+        memory.put(period, summary);
+        if (period.isClosed()) {
+            writeToDisk(period, summary);
+        }
+    }
+
+    // Drops the cached periods that contain the transaction's day.
+    public synchronized void transactionAdded(Transaction transaction) {
+        LocalDate day = LocalDate.ofEpochDay(TransactionStore.epochDay(transaction.getDate()));
+        memory.keySet().removeIf(period -> period.contains(day));
+        version++;
+    }
+
+    public synchronized String getStatistics() {
+        long requests = memoryHits + diskHits + misses;
+        return String.format("%d requests: %d memory hits, %d disk hits, %d misses (%.0f%% hit rate)",
+                requests, memoryHits, diskHits, misses, requests == 0 ? 0.0 : 100.0 * (memoryHits + diskHits) / requests);
+    }
+
+    private File file(Period period) {
+        return new File(directory, period.type.name().toLowerCase() + "-" + period + ".bin");
+    }
+
+    private SalesSummary readFromDisk(Period period) {
+        File file = file(period);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object data = in.readObject();
+            if (data instanceof SalesSummary) {
+                return (SalesSummary) data;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void writeToDisk(Period period, SalesSummary summary) {
+        directory.mkdirs();
+        File file = file(period);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeObject(summary);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Builds SalesSummary reports over a range of days on a ForkJoinPool. Each day segment is a partition:
+ * the range is split in halves until a task holds a few segments, each task summarizes its segments on
+ * its own, and the partial summaries are merged on the way back up.
+ *
+ * A day that has been closed (see POSSystem.closeDay) contributes its stored summary instead of being read.
+ *
+ * The caller passes the segments to cover, copied under the lock appends hold (see POSSystem); only their
+ * first getCount() records are read, so sales made while the report runs are not included in it.
+ */
+public class ReportEngine {
+    private static final int SEGMENTS_PER_TASK = 4;
+
+    private final TransactionStore store;
+    private final ForkJoinPool pool;
+
+    public ReportEngine(TransactionStore store) {
+        this(store, ForkJoinPool.commonPool());
+    }
+
+    public ReportEngine(TransactionStore store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+    }
+
+    // segments maps epoch days to copies of their manifest entries; the report covers exactly those days.
+    public CompletableFuture<SalesSummary> summarize(Map<Long, TransactionStore.SegmentInfo> segments) {
+        long[] days = new long[segments.size()];
+        int[] counts = new int[segments.size()];
+        boolean[] sealed = new boolean[segments.size()];
+        int i = 0;
+        for (Map.Entry<Long, TransactionStore.SegmentInfo> entry : segments.entrySet()) {
+            days[i] = entry.getKey();
+            counts[i] = entry.getValue().getCount();
+            sealed[i] = entry.getValue().isSealed();
+            i++;
+        }
+        PartitionTask task = new PartitionTask(days, counts, sealed, 0, days.length);
+        return CompletableFuture.supplyAsync(task::invoke, pool);
+    }
+
+    private class PartitionTask extends RecursiveTask<SalesSummary> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] days;
+        private final int[] counts;
+        private final boolean[] sealed;
+        private final int from;
+        private final int to;
+
+        PartitionTask(long[] days, int[] counts, boolean[] sealed, int from, int to) {
+            this.days = days;
+            this.counts = counts;
+            this.sealed = sealed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SalesSummary compute() {
+            if (to - from <= SEGMENTS_PER_TASK) {
+                SalesSummary summary = new SalesSummary();
+                for (int i = from; i < to; i++) {
+                    SalesSummary daySummary = sealed[i] ? store.readDaySummary(days[i]) : null;
+                    if (daySummary != null) {
+                        summary.merge(daySummary);
+                    } else {
+                        store.forEachInSegment(days[i], counts[i], summary::add);
+                    }
+                }
+                return summary;
+            }
+            int middle = (from + to) >>> 1;
+            PartitionTask left = new PartitionTask(days, counts, sealed, from, middle);
+            PartitionTask right = new PartitionTask(days, counts, sealed, middle, to);
+            left.fork();
+            SalesSummary rightSummary = right.compute();
+            return left.join().merge(rightSummary);
+        }
+    }
+}
@@ -1,18 +1,50 @@
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 
 public class SaleItem implements Serializable {
+    private static final long serialVersionUID = 6236872122402268366L;
 
     public InventoryItem item;
     public int amount;
+    // In cents; see Money.
+    private long unitPriceCents;
 
     SaleItem(InventoryItem item, int amount){
+        this(item, amount, item.getPrice());
+    }
+
+    SaleItem(InventoryItem item, int amount, long unitPrice){
         this.item = item;
         this.amount = amount;
+        this.unitPriceCents = unitPrice;
+    }
+
+    public long getPrice(){
+        return unitPriceCents;
+    }
+
+    public long getLineTotal() {
+        return Money.times(unitPriceCents, amount);
     }
 
-    public double getPrice(){
-        return item.getPrice();
+    // Sale items written before money was kept in cents have a double unitPrice, and those written before
+    // the price snapshot existed have none and fall back to the item's price.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass saved = fields.getObjectStreamClass();
+        item = (InventoryItem) fields.get("item", null);
+        amount = fields.get("amount", 0);
+        if (saved.getField("unitPriceCents") != null) {
+            unitPriceCents = fields.get("unitPriceCents", 0L);
+        } else if (saved.getField("unitPrice") != null) {
+            unitPriceCents = Money.ofDouble(fields.get("unitPrice", 0.0));
+        }
+        if (unitPriceCents == 0 && item != null) {
+            unitPriceCents = item.getPrice();
+        }
     }
 
     public int getAmount() {
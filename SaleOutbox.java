@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * A lane's durable queue of sales the store has not confirmed yet, oldest first. Every change rewrites the
+ * file and forces it to disk before returning, so a sale that was added survives a crash or power cut.
+ * The queue is only long while a lane is offline, so rewriting it whole is cheap enough.
+ *
+ * The file also holds the lane's ID, created on first use, and the sequence numbers reserved for it.
+ * Numbers are reserved SEQUENCE_BLOCK at a time, like transaction IDs, so a crash can skip some but never
+ * reuse one.
+ *
+ * File: int magic, byte version, UTF lane ID, long reserved sequence, int count, then the sales as
+ * CheckoutProtocol writes them. Queued lines keep only their item's SKU.
+ */
+public class SaleOutbox {
+    private static final int MAGIC = 0x4F555458;
+    private static final int VERSION = 1;
+    private static final int SEQUENCE_BLOCK = 1000;
+
+    private static class State {
+        String laneId = UUID.randomUUID().toString();
+        long reservedSequence;
+        ArrayList<QueuedSale> pending = new ArrayList<>();
+    }
+
+    private final File file;
+    private final State state;
+    private long nextSequence;
+
+    public SaleOutbox(String filePath) {
+        this.file = new File(filePath);
+        this.state = load();
+        this.nextSequence = state.reservedSequence;
+    }
+
+    public String getLaneId() {
+        return state.laneId;
+    }
+
+    public synchronized long nextSequence() throws IOException {
+        if (nextSequence >= state.reservedSequence) {
+            state.reservedSequence = nextSequence + SEQUENCE_BLOCK;
+            save();
+        }
+        return nextSequence++;
+    }
+
+    // Returns once the sale is on disk.
+    public synchronized void add(QueuedSale sale) throws IOException {
+        state.pending.add(sale);
+        try {
+            save();
+        } catch (IOException e) {
+            state.pending.remove(state.pending.size() - 1);
+            throw e;
+        }
+    }
+
+    public synchronized List<QueuedSale> peek(int max) {
+        return new ArrayList<>(state.pending.subList(0, Math.min(max, state.pending.size())));
+    }
+
+    public synchronized List<QueuedSale> getPending() {
+        return new ArrayList<>(state.pending);
+    }
+
+    // Drops the first count sales, once the store has confirmed them.
+    public synchronized void remove(int count) throws IOException {
+        state.pending.subList(0, count).clear();
+        save();
+    }
+
+    public synchronized boolean isEmpty() {
+        return state.pending.isEmpty();
+    }
+
+    public synchronized int size() {
+        return state.pending.size();
+    }
+
+    private State load() {
+        State loaded = new State();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() > VERSION) {
+                    throw new IOException("Not a sale outbox");
+                }
+                loaded.laneId = in.readUTF();
+                loaded.reservedSequence = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    loaded.pending.add(CheckoutProtocol.readSale(in, SaleOutbox::queuedItem, false));
+                }
+            } catch (IOException e) {
+                // Refusing to start is better than forgetting queued sales or reusing sequence numbers.
+                throw new IllegalStateException("Cannot read sale outbox " + file, e);
+            }
+        }
+        return loaded;
+    }
+
+    // Stands in for the item of a queued line, which only needs its SKU.
+    private static InventoryItem queuedItem(String sku) {
+        InventoryItem item = new InventoryItem(sku, "", 0, 0, "", 0, 0);
+        item.setSku(sku);
+        return item;
+    }
+
+    private void save() throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(state.laneId);
+            out.writeLong(state.reservedSequence);
+            out.writeInt(state.pending.size());
+            for (QueuedSale sale : state.pending) {
+                CheckoutProtocol.writeSale(out, sale);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Per-cashier sales counters for every day, month and year, updated as each transaction is added so a
+ * report is a map lookup. Transactions must be added in store order. The counters record how far they have
+ * got as a place in the store, the day segment last applied and how many of its records, so after loading
+ * a saved copy only the records stored after that place need to be applied. Transaction IDs cannot mark
+ * the place: terminals sharing a store number their sales from separate blocks.
+ */
+public class SalesAggregates implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static class Counter implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int count;
+        private long grossCents;
+        private long discount;
+
+        void add(Transaction transaction) {
+            count++;
+            grossCents += transaction.getTotalCost();
+            discount += transaction.getDiscount();
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        // In cents.
+        public long getGross() {
+            return grossCents;
+        }
+
+        public long getDiscount() {
+            return discount;
+        }
+
+        Counter copy() {
+            Counter copy = new Counter();
+            copy.count = count;
+            copy.grossCents = grossCents;
+            copy.discount = discount;
+            return copy;
+        }
+    }
+
+    private final HashMap<Long, HashMap<String, Counter>> daily = new HashMap<>();
+    private final HashMap<Long, HashMap<String, Counter>> monthly = new HashMap<>();
+    private final HashMap<Long, HashMap<String, Counter>> yearly = new HashMap<>();
+    private long appliedDay = Long.MIN_VALUE;
+    private int appliedCount;
+    private transient long lastDay = Long.MIN_VALUE;
+    private transient long lastMonth;
+    private transient long lastYear;
+
+    public void add(Transaction transaction) {
+        long day = TransactionStore.epochDay(transaction.getDate());
+        if (day != lastDay) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            lastDay = day;
+            lastMonth = monthKey(date.getYear(), date.getMonthValue() - 1);
+            lastYear = date.getYear();
+        }
+        String cashier = transaction.getCashier().getUsername();
+        counter(daily, lastDay, cashier).add(transaction);
+        counter(monthly, lastMonth, cashier).add(transaction);
+        counter(yearly, lastYear, cashier).add(transaction);
+        if (day == appliedDay) {
+            appliedCount++;
+        } else {
+            appliedDay = day;
+            appliedCount = 1;
+        }
+    }
+
+    public Map<String, Counter> getDay(long epochDay) {
+        return view(daily.get(epochDay));
+    }
+
+    // month is zero-based, as in Calendar.MONTH.
+    public Map<String, Counter> getMonth(int year, int month) {
+        return view(monthly.get(monthKey(year, month)));
+    }
+
+    public Map<String, Counter> getYear(int year) {
+        return view(yearly.get((long) year));
+    }
+
+    // The epoch day of the last segment applied, and how many of its records; Long.MIN_VALUE and 0 if none.
+    public long getAppliedDay() {
+        return appliedDay;
+    }
+
+    public int getAppliedCount() {
+        return appliedCount;
+    }
+
+    // Counters saved before they recorded their place in the store; they have counts but no place.
+    public boolean isPlaceUnknown() {
+        return appliedCount == 0 && !daily.isEmpty();
+    }
+
+    public static SalesAggregates load(File file) {
+        if (file.exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                Object data = in.readObject();
+                if (data instanceof SalesAggregates) {
+                    SalesAggregates aggregates = (SalesAggregates) data;
+                    aggregates.lastDay = Long.MIN_VALUE;
+                    return aggregates;
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        return new SalesAggregates();
+    }
+
+    public void save(File file) {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeObject(this);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long monthKey(int year, int month) {
+        return year * 12L + month;
+    }
+
+    private static Counter counter(HashMap<Long, HashMap<String, Counter>> periods, long period, String cashier) {
+        return periods.computeIfAbsent(period, key -> new HashMap<>()).computeIfAbsent(cashier, key -> new Counter());
+    }
+
+    // A copy that later sales do not change.
+    static Map<String, Counter> copyOf(Map<String, Counter> counters) {
+        HashMap<String, Counter> copy = new HashMap<>();
+        counters.forEach((cashier, counter) -> copy.put(cashier, counter.copy()));
+        return copy;
+    }
+
+    private static Map<String, Counter> view(HashMap<String, Counter> counters) {
+        return counters == null ? Collections.emptyMap() : Collections.unmodifiableMap(counters);
+    }
+}
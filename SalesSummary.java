@@ -0,0 +1,138 @@
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Totals over a set of transactions: count, takings, discount, smallest and largest sale, and the same
+ * figures grouped by cashier, item and category. Two summaries of disjoint sets merge into the summary
+ * of their union, which is what lets ReportEngine build one per partition on separate threads.
+ */
+public class SalesSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static class Totals implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long count;
+        private long units;
+        private long cents;
+
+        void add(long count, long units, long cents) {
+            this.count += count;
+            this.units += units;
+            this.cents += cents;
+        }
+
+        void merge(Totals other) {
+            add(other.count, other.units, other.cents);
+        }
+
+        // Transactions for a cashier group, sale lines for item and category groups.
+        public long getCount() {
+            return count;
+        }
+
+        public long getUnits() {
+            return units;
+        }
+
+        public long getRevenue() {
+            return cents;
+        }
+    }
+
+    private long count;
+    private long grossCents;
+    private long discount;
+    private long loyaltyPoints;
+    private long minCents = Long.MAX_VALUE;
+    private long maxCents = Long.MIN_VALUE;
+    private final Map<String, Totals> byCashier = new HashMap<>();
+    private final Map<String, Totals> byItem = new HashMap<>();
+    private final Map<String, Totals> byCategory = new HashMap<>();
+
+    public void add(Transaction transaction) {
+        long cents = transaction.getTotalCost();
+        count++;
+        grossCents += cents;
+        discount += transaction.getDiscount();
+        loyaltyPoints += POSController.loyaltyPointsFor(transaction.getTotalCost());
+        minCents = Math.min(minCents, cents);
+        maxCents = Math.max(maxCents, cents);
+        long units = 0;
+        for (SaleItem saleItem : transaction.getItems()) {
+            units += saleItem.getAmount();
+            long lineCents = saleItem.getLineTotal();
+            InventoryItem item = saleItem.getItem();
+            totals(byItem, item.getName()).add(1, saleItem.getAmount(), lineCents);
+            totals(byCategory, item.getCategory() == null ? "" : item.getCategory()).add(1, saleItem.getAmount(), lineCents);
+        }
+        totals(byCashier, transaction.getCashier().getUsername()).add(1, units, cents);
+    }
+
+    public SalesSummary merge(SalesSummary other) {
+        count += other.count;
+        grossCents += other.grossCents;
+        discount += other.discount;
+        loyaltyPoints += other.loyaltyPoints;
+        minCents = Math.min(minCents, other.minCents);
+        maxCents = Math.max(maxCents, other.maxCents);
+        mergeGroups(byCashier, other.byCashier);
+        mergeGroups(byItem, other.byItem);
+        mergeGroups(byCategory, other.byCategory);
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Amounts are in cents.
+    public long getGross() {
+        return grossCents;
+    }
+
+    public long getDiscount() {
+        return discount;
+    }
+
+    public long getLoyaltyPoints() {
+        return loyaltyPoints;
+    }
+
+    // Zero when the summary is empty.
+    public long getMinimum() {
+        return count == 0 ? 0 : minCents;
+    }
+
+    public long getMaximum() {
+        return count == 0 ? 0 : maxCents;
+    }
+
+    // Rounded to the nearest cent.
+    public long getAverage() {
+        return count == 0 ? 0 : Math.round((double) grossCents / count);
+    }
+
+    public Map<String, Totals> getByCashier() {
+        return byCashier;
+    }
+
+    public Map<String, Totals> getByItem() {
+        return byItem;
+    }
+
+    public Map<String, Totals> getByCategory() {
+        return byCategory;
+    }
+
+    private static Totals totals(Map<String, Totals> groups, String key) {
+        return groups.computeIfAbsent(key, k -> new Totals());
+    }
+
+    private static void mergeGroups(Map<String, Totals> into, Map<String, Totals> from) {
+        for (Map.Entry<String, Totals> entry : from.entrySet()) {
+            totals(into, entry.getKey()).merge(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/*
+ * One instance per running application. Owns the managers so every view works on the same in-memory
+ * data and each .bin file is read once, and tells registered views when something has changed.
+ *
+ * The effects of a sale beyond the transaction record itself go through an event ring: the sales
+ * counters and report cache, writing customers.bin, and telling the views. A checkout returns once the
+ * transaction is in the store, and the views hear of a burst of sales once. Views may be told on the
+ * ring's notifier thread, not only the FX thread.
+ *
+ * Listeners are told the kind of change and, for stock changes, the SKUs whose stock changed, so a view
+ * can update just those rows. The SKUs are null when items may have been added, removed or edited.
+ */
+public class StoreContext {
+    private static final int EVENT_RING_SIZE = 4096;
+    private static final int SHUTDOWN_DRAIN_SECONDS = 5;
+
+    public enum Change {
+        USERS, INVENTORY, CUSTOMERS, TRANSACTIONS
+    }
+
+    private final UserManager userManager;
+    private final InventoryManager inventoryManager;
+    private final POSSystem posSystem;
+    private final CustomerManager customerManager;
+    private final POSController posController;
+    private final AuthController authController;
+    private final LocalCheckoutService localCheckoutService;
+    private final CheckoutService checkoutService;
+    private final EventRing<StoreEvent> events = new EventRing<>(EVENT_RING_SIZE, StoreEvent::new);
+    private final EnumSet<Change> pendingChanges = EnumSet.noneOf(Change.class);
+    private final Set<String> pendingSkus = new HashSet<>();
+    private final List<BiConsumer<Change, Set<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    public StoreContext() {
+        userManager = new UserManager();
+        inventoryManager = new InventoryManager();
+        posSystem = new POSSystem(inventoryManager);
+        customerManager = new CustomerManager(posSystem);
+        posController = new POSController(posSystem, inventoryManager);
+        authController = new AuthController(userManager);
+        localCheckoutService = new LocalCheckoutService(this);
+        // Started with -Dshop.server=host:port, cashier lanes check out against a CheckoutServer instead,
+        // queueing sales in outbox.bin while it cannot be reached.
+        String server = System.getProperty("shop.server");
+        checkoutService = server == null || server.isBlank()
+                ? localCheckoutService
+                : new OfflineCheckoutService(RemoteCheckoutService.forAddress(server.trim()), new SaleOutbox("outbox.bin"));
+        try (Stream<Transaction> history = posSystem.streamTransactions()) {
+            inventoryManager.backfillRollups(history);
+        }
+
+        posSystem.setEventRing(events);
+        inventoryManager.setEventRing(events);
+        customerManager.setEventRing(events);
+        EventRing<StoreEvent>.Processor ledger = events.addProcessor("store-ledger", posSystem::onEvent);
+        EventRing<StoreEvent>.Processor persistence = events.addProcessor("store-persistence", customerManager::onEvent);
+        events.addProcessor("store-notify", this::notifyViews, List.of(ledger, persistence));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drainEventsOnExit));
+
+        userManager.setChangeListener(() -> fireChange(Change.USERS, null));
+        inventoryManager.setChangeListener(() -> fireChange(Change.INVENTORY, null));
+        customerManager.setChangeListener(() -> fireChange(Change.CUSTOMERS, null));
+        posSystem.setChangeListener(() -> fireChange(Change.TRANSACTIONS, null));
+    }
+
+    public void addListener(BiConsumer<Change, Set<String>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BiConsumer<Change, Set<String>> listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireChange(Change change, Set<String> skus) {
+        for (BiConsumer<Change, Set<String>> listener : listeners) {
+            listener.accept(change, skus);
+        }
+    }
+
+    // Runs after the ledger and persistence processors, so views read counters and files that include the
+    // events they are told of.
+    private void notifyViews(StoreEvent event, boolean endOfBatch) {
+        switch (event.getType()) {
+            case TRANSACTION_COMMITTED:
+                pendingChanges.add(Change.TRANSACTIONS);
+                break;
+            case STOCK_CHANGED:
+                pendingChanges.add(Change.INVENTORY);
+                pendingSkus.add(event.getSku());
+                break;
+            case LOYALTY_CHANGED:
+                pendingChanges.add(Change.CUSTOMERS);
+                break;
+        }
+        if (endOfBatch) {
+            for (Change change : pendingChanges) {
+                fireChange(change, change == Change.INVENTORY ? Set.copyOf(pendingSkus) : null);
+            }
+            pendingChanges.clear();
+            pendingSkus.clear();
+        }
+    }
+
+    // Gives the processors a few seconds to save what is left; a stuck one must not stop the JVM from exiting.
+    private void drainEventsOnExit() {
+        try {
+            if (!events.awaitIdle(SHUTDOWN_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Store events were still being handled at exit; the last changes may not be saved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits until every event so far has been handled; for tools and tests that read the files afterwards.
+    public void awaitEvents() {
+        events.awaitIdle();
+    }
+
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    public InventoryManager getInventoryManager() {
+        return inventoryManager;
+    }
+
+    public POSSystem getPosSystem() {
+        return posSystem;
+    }
+
+    public CustomerManager getCustomerManager() {
+        return customerManager;
+    }
+
+    public POSController getPosController() {
+        return posController;
+    }
+
+    public AuthController getAuthController() {
+        return authController;
+    }
+
+    public CheckoutService getCheckoutService() {
+        return checkoutService;
+    }
+
+    // This process's own store, which a CheckoutServer serves to remote lanes.
+    public LocalCheckoutService getLocalCheckoutService() {
+        return localCheckoutService;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * One slot of the store's EventRing. Slots are reused, so a publisher overwrites every field through one of
+ * the setters below, and a handler must copy out anything it keeps after onEvent returns.
+ */
+public class StoreEvent {
+
+    public enum Type {
+        TRANSACTION_COMMITTED, STOCK_CHANGED, LOYALTY_CHANGED
+    }
+
+    private Type type;
+    private Transaction transaction;
+    private String sku;
+    private int quantityChange;
+    private int customerId;
+    private int pointsChange;
+
+    // The transaction is already in the store.
+    void transactionCommitted(Transaction transaction) {
+        set(Type.TRANSACTION_COMMITTED, transaction, null, 0, 0, 0);
+    }
+
+    void stockChanged(String sku, int quantityChange) {
+        set(Type.STOCK_CHANGED, null, sku, quantityChange, 0, 0);
+    }
+
+    void loyaltyChanged(int customerId, int pointsChange) {
+        set(Type.LOYALTY_CHANGED, null, null, 0, customerId, pointsChange);
+    }
+
+    private void set(Type type, Transaction transaction, String sku, int quantityChange, int customerId,
+                     int pointsChange) {
+        this.type = type;
+        this.transaction = transaction;
+        this.sku = sku;
+        this.quantityChange = quantityChange;
+        this.customerId = customerId;
+        this.pointsChange = pointsChange;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public int getQuantityChange() {
+        return quantityChange;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getPointsChange() {
+        return pointsChange;
+    }
+}
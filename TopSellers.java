@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Space-Saving heavy hitters: keeps at most capacity counters however many distinct items stream past.
+ * When a new item arrives and every counter is taken, the smallest counter is given to the new item and
+ * its old count becomes the new item's possible overcount (error). Any item that sold more than
+ * total / capacity units is guaranteed to be among the counters, and each reported count is at most
+ * error above the true one.
+ *
+ * The counters sit in a binary min-heap so the smallest one is found and re-sifted in O(log capacity).
+ */
+public class TopSellers {
+
+    public static class Entry {
+        private final String key;
+        private long count;
+        private long error;
+        private int heapIndex;
+        private int rank;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        // 1 for the best seller; set by top.
+        public int getRank() {
+            return rank;
+        }
+
+        // The count the item is certain to have reached.
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private final Entry[] heap;
+    private int size;
+    private long total;
+
+    public TopSellers(int capacity) {
+        this.capacity = capacity;
+        this.entries = new HashMap<>(capacity * 2);
+        this.heap = new Entry[capacity];
+    }
+
+    public void add(String key, long amount) {
+        total += amount;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (size < capacity) {
+                entry = new Entry(key);
+                entry.heapIndex = size;
+                heap[size++] = entry;
+                siftUp(entry.heapIndex);
+            } else {
+                Entry evicted = heap[0];
+                entries.remove(evicted.key);
+                entry = new Entry(key);
+                entry.count = evicted.count;
+                entry.error = evicted.count;
+                entry.heapIndex = 0;
+                heap[0] = entry;
+            }
+            entries.put(key, entry);
+        }
+        entry.count += amount;
+        siftDown(entry.heapIndex);
+    }
+
+    public void add(Transaction transaction) {
+        for (SaleItem saleItem : transaction.getItems()) {
+            add(saleItem.getItem().getName(), saleItem.getAmount());
+        }
+    }
+
+    // The n largest counters, largest first.
+    public List<Entry> top(int n) {
+        List<Entry> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.get(i).rank = i + 1;
+        }
+        return sorted.subList(0, Math.min(n, sorted.size()));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= entry.count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+}
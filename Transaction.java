@@ -1,25 +1,68 @@
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 
 public class Transaction implements Serializable {
+    private static final long serialVersionUID = -9003993938580495478L;
+
     private ArrayList<SaleItem> items;
     private Date date;
     private int buyerID;
     private User cashier;
-    private double totalCost;
+    // In cents; see Money.
+    private long totalCostCents;
     private int discount;
     private int transactionID;
+    // Set only for a sale a lane made offline and the store recorded later; date is when it was recorded.
+    private Date saleDate;
+    // Set only for a sale a lane tagged with its ID and sequence number, so a resend is never stored twice.
+    private String laneId;
+    private long laneSequence;
+
+    public Transaction(int transactionID, Date date, User cashier, int buyerID, long totalCost, int discount, ArrayList<SaleItem> items) {
+        this(transactionID, date, cashier, buyerID, totalCost, discount, items, null);
+    }
+
+    public Transaction(int transactionID, Date date, User cashier, int buyerID, long totalCost, int discount,
+                       ArrayList<SaleItem> items, Date saleDate) {
+        this(transactionID, date, cashier, buyerID, totalCost, discount, items, saleDate, null, 0);
+    }
 
-    public Transaction(User cashier, int buyerID, double totalCost, int discount, ArrayList<SaleItem> items, ArrayList<Transaction> transactions) {
+    public Transaction(int transactionID, Date date, User cashier, int buyerID, long totalCost, int discount,
+                       ArrayList<SaleItem> items, Date saleDate, String laneId, long laneSequence) {
         this.items = items;
-        this.date = new Date();
+        this.date = date;
         this.cashier = cashier;
         this.buyerID = buyerID;
-        this.totalCost = totalCost;
+        this.totalCostCents = totalCost;
         this.discount = discount;
-        transactionID = transactions.size()+1;
+        this.transactionID = transactionID;
+        this.saleDate = saleDate;
+        this.laneId = laneId;
+        this.laneSequence = laneSequence;
+    }
+
+    // Transactions saved before money was kept in cents have a double totalCost.
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass saved = fields.getObjectStreamClass();
+        items = (ArrayList<SaleItem>) fields.get("items", null);
+        date = (Date) fields.get("date", null);
+        buyerID = fields.get("buyerID", 0);
+        cashier = (User) fields.get("cashier", null);
+        discount = fields.get("discount", 0);
+        transactionID = fields.get("transactionID", 0);
+        saleDate = (Date) fields.get("saleDate", null);
+        laneId = (String) fields.get("laneId", null);
+        laneSequence = fields.get("laneSequence", 0L);
+        totalCostCents = saved.getField("totalCostCents") != null
+                ? fields.get("totalCostCents", 0L)
+                : Money.ofDouble(fields.get("totalCost", 0.0));
     }
 
     public int getBuyerID() {
@@ -31,16 +74,36 @@ public class Transaction implements Serializable {
         return transactionID;
     }
 
+    // When the store recorded the sale; the day segment, the reports and the Z-report go by this.
     public Date getDate() {
         return date;
     }
 
+    // When the sale was made: later than getDate only for a late sale.
+    public Date getSaleDate() {
+        return saleDate != null ? saleDate : date;
+    }
+
+    // True for a sale a lane made while offline and synced to the store afterwards.
+    public boolean isLate() {
+        return saleDate != null;
+    }
+
+    // The lane that sent the sale tagged, or null.
+    public String getLaneId() {
+        return laneId;
+    }
+
+    public long getLaneSequence() {
+        return laneSequence;
+    }
+
     public User getCashier(){
         return cashier;
     }
 
-    public double getTotalCost() {
-        return totalCost;
+    public long getTotalCost() {
+        return totalCostCents;
     }
 
     public ArrayList<SaleItem> getItems() {
@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+ * Compact binary format for transactions, replacing Java serialization of the whole object graph.
+ *
+ * File header: int magic, byte version, long baseTime, varlong baseID.
+ * Record:      varint length, then
+ *              zigzag varlong (id - baseID), zigzag varlong (time - baseTime),
+ *              zigzag varint buyerID, string cashier, varlong totalCost in cents, varint discount,
+ *              varint item count, per item: string item key, varint amount, varlong unit price in cents,
+ *              then an optional tail:
+ *                untagged late sale: zigzag varlong (sale time - time);
+ *                tagged sale:        varlong (0, or 1 + zigzag (sale time - time) if late), string lane ID,
+ *                                    varlong lane sequence.
+ *
+ * The item key is the item name in version 1 files and the SKU from version 2 on. Records are always
+ * written in the version of the file they are appended to, so the tail is told apart by the record length
+ * rather than by a new version: nothing after the items, one varlong, or more than one. Only the cashier's
+ * username and the item key are stored; they are resolved back to objects on decode.
+ */
+public class TransactionCodec {
+    public static final int MAGIC = 0x54584E53;
+    public static final int VERSION = 2;
+    private static final int VERSION_ITEM_NAMES = 1;
+
+    public static class Header {
+        final int version;
+        final long baseTime;
+        final long baseID;
+
+        public Header(int version, long baseTime, long baseID) {
+            this.version = version;
+            this.baseTime = baseTime;
+            this.baseID = baseID;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        // Bytes taken by the header on disk, i.e. the offset of the first record.
+        public int size() {
+            return 4 + 1 + 8 + varLongSize(baseID);
+        }
+    }
+
+    private final Function<String, User> cashierResolver;
+    private final Function<String, InventoryItem> itemBySku;
+    private final Function<String, InventoryItem> itemByName;
+
+    public TransactionCodec(Function<String, User> cashierResolver, Function<String, InventoryItem> itemBySku,
+                            Function<String, InventoryItem> itemByName) {
+        this.cashierResolver = cashierResolver;
+        this.itemBySku = itemBySku;
+        this.itemByName = itemByName;
+    }
+
+    // Resolves cashiers to one shared username-only User each, and items through the inventory's indexes.
+    // The caches are concurrent so report threads can decode alongside the UI thread.
+    // Items that have since been removed from the inventory are decoded as placeholders carrying just the key.
+    public static TransactionCodec create(InventoryManager inventoryManager) {
+        Map<String, User> cashiers = new ConcurrentHashMap<>();
+        Map<String, InventoryItem> removedItems = new ConcurrentHashMap<>();
+        return new TransactionCodec(
+                username -> cashiers.computeIfAbsent(username, name -> new User(name, "", false)),
+                sku -> {
+                    InventoryItem item = inventoryManager.findItemBySku(sku);
+                    return item != null ? item : removedItems.computeIfAbsent(sku, TransactionCodec::placeholderItem);
+                },
+                itemName -> {
+                    InventoryItem item = inventoryManager.findItem(itemName);
+                    return item != null ? item : removedItems.computeIfAbsent(itemName, TransactionCodec::placeholderItem);
+                });
+    }
+
+    private static InventoryItem placeholderItem(String key) {
+        return new InventoryItem(key, "", 0, 0, "", 0, 0);
+    }
+
+    public static void writeHeader(DataOutput out, Header header) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(header.version);
+        out.writeLong(header.baseTime);
+        writeVarLong(out, header.baseID);
+    }
+
+    public static Header readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a transaction file");
+        }
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported transaction file version " + version);
+        }
+        long baseTime = in.readLong();
+        long baseID = readVarLong(in);
+        return new Header(version, baseTime, baseID);
+    }
+
+    public byte[] encode(Transaction transaction, Header header) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            writeVarLong(out, zigzag(transaction.getTransactionID() - header.baseID));
+            writeVarLong(out, zigzag(transaction.getDate().getTime() - header.baseTime));
+            writeVarLong(out, zigzag(transaction.getBuyerID()));
+            writeString(out, transaction.getCashier().getUsername());
+            writeVarLong(out, zigzag(transaction.getTotalCost()));
+            writeVarLong(out, zigzag(transaction.getDiscount()));
+            writeVarLong(out, transaction.getItems().size());
+            for (SaleItem saleItem : transaction.getItems()) {
+                InventoryItem item = saleItem.getItem();
+                boolean byName = header.version == VERSION_ITEM_NAMES || item.getSku() == null;
+                writeString(out, byName ? item.getName() : item.getSku());
+                writeVarLong(out, saleItem.getAmount());
+                writeVarLong(out, zigzag(saleItem.getPrice()));
+            }
+            long saleOffset = zigzag(transaction.getSaleDate().getTime() - transaction.getDate().getTime());
+            if (transaction.getLaneId() != null) {
+                writeVarLong(out, transaction.isLate() ? saleOffset + 1 : 0);
+                writeString(out, transaction.getLaneId());
+                writeVarLong(out, transaction.getLaneSequence());
+            } else if (transaction.isLate()) {
+                writeVarLong(out, saleOffset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    public void writeRecord(DataOutput out, Transaction transaction, Header header) throws IOException {
+        byte[] record = encode(transaction, header);
+        writeVarLong(out, record.length);
+        out.write(record);
+    }
+
+    public Transaction readRecord(DataInput in, Header header) throws IOException {
+        long length = readVarLong(in);
+        return decode(in, header, length);
+    }
+
+    // length is the record's length from its frame; the tail is whatever follows the items.
+    // Varints are always written in their shortest form, so the bytes read can be counted from the values.
+    public Transaction decode(DataInput in, Header header, long length) throws IOException {
+        Function<String, InventoryItem> itemResolver = header.version == VERSION_ITEM_NAMES ? itemByName : itemBySku;
+        long id = readVarLong(in);
+        long time = readVarLong(in);
+        long buyerID = readVarLong(in);
+        byte[] cashier = readBytes(in);
+        long totalCost = readVarLong(in);
+        long discount = readVarLong(in);
+        int itemCount = (int) readVarLong(in);
+        long read = varLongSize(id) + varLongSize(time) + varLongSize(buyerID) + bytesSize(cashier)
+                + varLongSize(totalCost) + varLongSize(discount) + varLongSize(itemCount);
+        ArrayList<SaleItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            byte[] key = readBytes(in);
+            int amount = (int) readVarLong(in);
+            long unitPrice = readVarLong(in);
+            read += bytesSize(key) + varLongSize(amount) + varLongSize(unitPrice);
+            InventoryItem item = itemResolver.apply(new String(key, StandardCharsets.UTF_8));
+            items.add(new SaleItem(item, amount, unzigzag(unitPrice)));
+        }
+        Date date = new Date(unzigzag(time) + header.baseTime);
+        Date saleDate = null;
+        String laneId = null;
+        long laneSequence = 0;
+        if (read < length) {
+            long saleOffset = readVarLong(in);
+            read += varLongSize(saleOffset);
+            boolean late = true;
+            if (read < length) {
+                laneId = new String(readBytes(in), StandardCharsets.UTF_8);
+                laneSequence = readVarLong(in);
+                late = saleOffset != 0;
+                saleOffset--;
+            }
+            if (late) {
+                saleDate = new Date(date.getTime() + unzigzag(saleOffset));
+            }
+        }
+        return new Transaction((int) (unzigzag(id) + header.baseID), date,
+                cashierResolver.apply(new String(cashier, StandardCharsets.UTF_8)), (int) unzigzag(buyerID),
+                unzigzag(totalCost), (int) unzigzag(discount), items, saleDate, laneId, laneSequence);
+    }
+
+    // Reads just the timestamp out of an encoded record, skipping the id in front of it.
+    public static long decodeTime(byte[] record, Header header) {
+        int i = 0;
+        while ((record[i] & 0x80) != 0) {
+            i++;
+        }
+        i++;
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = record[i++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return unzigzag(value) + header.baseTime;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (shift < 64) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    // Bytes taken by a string that was read as these bytes.
+    private static int bytesSize(byte[] bytes) {
+        return varLongSize(bytes.length) + bytes.length;
+    }
+}
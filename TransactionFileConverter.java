@@ -0,0 +1,48 @@
+import java.io.*;
+import java.util.ArrayList;
+
+/*
+ * Converts a legacy transactions.bin (a Java-serialized ArrayList<Transaction>) into the compact
+ * TransactionCodec format. POSSystem does this automatically on first start; running this class
+ * directly also prints how long each format takes to decode the same history.
+ */
+public class TransactionFileConverter {
+
+    @SuppressWarnings("unchecked")
+    public static ArrayList<Transaction> readLegacy(String legacyFilePath) {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyFilePath), 1 << 16))) {
+            Object data = in.readObject();
+            if (data instanceof ArrayList<?>) {
+                return (ArrayList<Transaction>) data;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    public static void convert(String legacyFilePath, TransactionJournal target) {
+        target.rewrite(readLegacy(legacyFilePath));
+    }
+
+    public static void main(String[] args) {
+        String legacyFilePath = args.length > 0 ? args[0] : "transactions.bin";
+        String targetFilePath = args.length > 1 ? args[1] : "transactions.dat";
+
+        TransactionJournal target = new TransactionJournal(targetFilePath, TransactionCodec.create(new InventoryManager()));
+
+        long start = System.nanoTime();
+        ArrayList<Transaction> legacy = readLegacy(legacyFilePath);
+        long legacyMillis = (System.nanoTime() - start) / 1_000_000;
+
+        target.rewrite(legacy);
+
+        start = System.nanoTime();
+        int decoded = target.replay().size();
+        long codecMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Converted " + legacy.size() + " transactions: "
+                + new File(legacyFilePath).length() + " -> " + new File(targetFilePath).length() + " bytes");
+        System.out.println("ObjectInputStream: " + legacyMillis + " ms, TransactionCodec: " + codecMillis + " ms (" + decoded + " records)");
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Hands out transaction IDs from blocks reserved in a small sequence file. The file holds the first ID
+ * that has not been reserved yet; reserving a block moves it forward by BLOCK_SIZE under an exclusive
+ * file lock and forces it to disk before any ID from the block is used. IDs inside a block come from an
+ * atomic counter, so lanes sharing an allocator never take a lock, and terminals sharing the store
+ * directory each reserve their own blocks.
+ *
+ * An ID is never issued twice, including across restarts: what was left of a block when the program
+ * stopped is skipped, never handed out again. IDs stay increasing within one terminal, but are not
+ * contiguous, and terminals sharing a store interleave their blocks, so the store does not keep
+ * transactions in ID order and nothing may assume it does.
+ */
+public class TransactionIdAllocator {
+    private static final int BLOCK_SIZE = 1000;
+
+    private static class Block {
+        final int end;
+        final AtomicInteger next;
+
+        Block(int start, int end) {
+            this.end = end;
+            this.next = new AtomicInteger(start);
+        }
+    }
+
+    private final File sequenceFile;
+    private final int floor;
+    private volatile Block block = new Block(0, 0);
+
+    // floor is the lowest ID that may be issued, normally one above the last stored transaction; it guards
+    // against a sequence file that is missing or older than the data.
+    public TransactionIdAllocator(String sequenceFilePath, int floor) {
+        this.sequenceFile = new File(sequenceFilePath);
+        this.floor = floor;
+    }
+
+    public int next() {
+        while (true) {
+            Block current = block;
+            int id = current.next.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserveBlock();
+                }
+            }
+        }
+    }
+
+    // File locks are held per process, so allocators in the same process also queue on the class.
+    private Block reserveBlock() {
+        synchronized (TransactionIdAllocator.class) {
+            return reserveBlockLocked();
+        }
+    }
+
+    private Block reserveBlockLocked() {
+        sequenceFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (RandomAccessFile file = new RandomAccessFile(sequenceFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                int start = file.length() >= Integer.BYTES ? file.readInt() : 0;
+                start = Math.max(start, floor);
+                int end = start + BLOCK_SIZE;
+                file.seek(0);
+                file.writeInt(end);
+                channel.force(true);
+                return new Block(start, end);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reserve transaction IDs in " + sequenceFile, e);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class TransactionJournal {
+    private final String filePath;
+    private final TransactionCodec codec;
+    private int recordCount;
+    private TransactionCodec.Header header;
+    // Bytes up to the end of the last whole record, or -1 until the file has been checked.
+    private long validLength = -1;
+
+    public TransactionJournal(String filePath, TransactionCodec codec) {
+        this.filePath = filePath;
+        this.codec = codec;
+    }
+
+    // Each record is [varint length][encoded Transaction], written at the end of the file.
+    // Returns the byte offset of the record, or -1 if it could not be written.
+    //
+    // The first append, and the first after a failed one, cuts off a torn record left at the tail by a
+    // crash or a failed write; anything appended after it could not be read back.
+    public long append(Transaction transaction) {
+        try {
+            File file = new File(filePath);
+            if (validLength < 0) {
+                validLength = file.exists() ? scanValidLength(file) : 0;
+            }
+            boolean newFile = validLength == 0;
+            if (!newFile && header == null) {
+                loadHeader(file);
+            }
+            try (FileOutputStream fileOut = new FileOutputStream(file, !newFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                if (!newFile && fileOut.getChannel().size() > validLength) {
+                    fileOut.getChannel().truncate(validLength);
+                }
+                if (newFile) {
+                    header = new TransactionCodec.Header(TransactionCodec.VERSION,
+                            transaction.getDate().getTime(), transaction.getTransactionID());
+                    TransactionCodec.writeHeader(out, header);
+                }
+                long offset = validLength + out.size();
+                codec.writeRecord(out, transaction, header);
+                out.flush();
+                fileOut.getFD().sync();
+                validLength += out.size();
+                recordCount++;
+                return offset;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            validLength = -1;
+            return -1;
+        }
+    }
+
+    // Reads the records at the given offsets (as returned by append, ascending) in one forward pass.
+    public ArrayList<Transaction> readAt(long[] offsets, int from, int to) {
+        ArrayList<Transaction> result = new ArrayList<>(to - from);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath), 1 << 16))) {
+            TransactionCodec.Header fileHeader = TransactionCodec.readHeader(in);
+            long position = fileHeader.size();
+            for (int i = from; i < to; i++) {
+                in.skipNBytes(offsets[i] - position);
+                long length = TransactionCodec.readVarLong(in);
+                result.add(codec.decode(in, fileHeader, length));
+                position = offsets[i] + TransactionCodec.varLongSize(length) + length;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Reads only the timestamp of every record. Returns {times, offsets}, both trimmed to the record count.
+    public long[][] scanTimes() {
+        long[] times = new long[Math.max(16, recordCount)];
+        long[] offsets = new long[times.length];
+        int count = 0;
+        File file = new File(filePath);
+        if (file.exists() && file.length() > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                TransactionCodec.Header fileHeader = TransactionCodec.readHeader(in);
+                long offset = fileHeader.size();
+                while (true) {
+                    long length;
+                    byte[] record;
+                    try {
+                        length = TransactionCodec.readVarLong(in);
+                        record = new byte[(int) length];
+                        in.readFully(record);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    times[count] = TransactionCodec.decodeTime(record, fileHeader);
+                    offsets[count] = offset;
+                    count++;
+                    offset += TransactionCodec.varLongSize(length) + length;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new long[][]{Arrays.copyOf(times, count), Arrays.copyOf(offsets, count)};
+    }
+
+    // Visits every record together with its byte offset.
+    public void forEachRecord(ObjLongConsumer<Transaction> visitor) {
+        forEachRecord(Integer.MAX_VALUE, visitor);
+    }
+
+    // Visits the first limit records together with their byte offsets.
+    public void forEachRecord(int limit, ObjLongConsumer<Transaction> visitor) {
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            TransactionCodec.Header fileHeader = TransactionCodec.readHeader(in);
+            long offset = fileHeader.size();
+            for (int visited = 0; visited < limit; visited++) {
+                long length;
+                byte[] record;
+                try {
+                    length = TransactionCodec.readVarLong(in);
+                    record = new byte[(int) length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                visitor.accept(codec.decode(new DataInputStream(new ByteArrayInputStream(record)), fileHeader, length), offset);
+                offset += TransactionCodec.varLongSize(length) + length;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // A torn record at the tail (crash mid-append) is dropped; everything before it is kept.
+    public ArrayList<Transaction> replay() {
+        ArrayList<Transaction> replayed = new ArrayList<>();
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            recordCount = 0;
+            return replayed;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            readHeader(in);
+            while (true) {
+                try {
+                    replayed.add(codec.readRecord(in, header));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recordCount = replayed.size();
+        return replayed;
+    }
+
+    // Decodes records one at a time as the stream is consumed. Close the stream to release the file.
+    public Stream<Transaction> stream() {
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return Stream.empty();
+        }
+        DataInputStream in;
+        TransactionCodec.Header streamHeader;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            streamHeader = TransactionCodec.readHeader(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        }
+
+        Iterator<Transaction> iterator = new Iterator<>() {
+            private Transaction next = advance();
+
+            private Transaction advance() {
+                try {
+                    return codec.readRecord(in, streamHeader);
+                } catch (EOFException e) {
+                    return null;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Transaction next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Transaction current = next;
+                next = advance();
+                return current;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+    }
+
+    // Walks the record frames without decoding them. Returns {count, lowest ID, highest ID}.
+    public long[] scanIDs() {
+        long[] result = new long[3];
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            readHeader(in);
+            while (true) {
+                try {
+                    int length = (int) TransactionCodec.readVarLong(in);
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    long id = TransactionCodec.unzigzag(TransactionCodec.readVarLong(
+                            new DataInputStream(new ByteArrayInputStream(record)))) + header.baseID;
+                    result[1] = result[0] == 0 ? id : Math.min(result[1], id);
+                    result[2] = result[0] == 0 ? id : Math.max(result[2], id);
+                    result[0]++;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recordCount = (int) result[0];
+        return result;
+    }
+
+    // Replaces the whole file with the given transactions; the new file is swapped in atomically.
+    public void rewrite(List<Transaction> transactions) {
+        File tempFile = new File(filePath + ".tmp");
+        TransactionCodec.Header newHeader = new TransactionCodec.Header(TransactionCodec.VERSION,
+                transactions.isEmpty() ? 0 : transactions.get(0).getDate().getTime(),
+                transactions.isEmpty() ? 0 : transactions.get(0).getTransactionID());
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            TransactionCodec.writeHeader(out, newHeader);
+            for (Transaction transaction : transactions) {
+                codec.writeRecord(out, transaction, newHeader);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), new File(filePath).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            header = newHeader;
+            recordCount = transactions.size();
+            validLength = -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void clear() {
+        new File(filePath).delete();
+        header = null;
+        recordCount = 0;
+        validLength = -1;
+    }
+
+    public boolean exists() {
+        return new File(filePath).exists();
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    // Where the last whole record ends, or 0 if not even the header is whole.
+    private long scanValidLength(File file) throws IOException {
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            long end;
+            try {
+                end = TransactionCodec.readHeader(in).size();
+            } catch (EOFException e) {
+                return 0;
+            }
+            while (true) {
+                long next;
+                try {
+                    long length = TransactionCodec.readVarLong(in);
+                    next = end + TransactionCodec.varLongSize(length) + length;
+                    // A file stream skips past the end without complaint, so the length is checked instead.
+                    if (next > fileLength) {
+                        return end;
+                    }
+                    in.skipNBytes(length);
+                } catch (EOFException e) {
+                    return end;
+                }
+                end = next;
+            }
+        }
+    }
+
+    private void loadHeader(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readHeader(in);
+        }
+    }
+
+    private void readHeader(DataInput in) throws IOException {
+        header = TransactionCodec.readHeader(in);
+    }
+}
@@ -0,0 +1,79 @@
+import java.time.LocalDate;
+import java.util.Locale;
+
+/*
+ * What the Sales Reports table shows: the transactions of a period, optionally only one cashier's, in one
+ * sort order. Both days are inclusive and either may be null for an open end. The cashier filter matches
+ * any part of the user name, ignoring case. Sorting ascending keeps rows with the same key in the order
+ * they were stored; sorting descending is exactly the reverse.
+ */
+public class TransactionQuery {
+
+    public enum SortKey {
+        ID, DATE, CASHIER, TOTAL
+    }
+
+    // Every transaction, oldest first: the store's own order.
+    public static final TransactionQuery ALL = new TransactionQuery(null, null, null, SortKey.DATE, false);
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final String cashier;
+    private final SortKey sortKey;
+    private final boolean descending;
+
+    public TransactionQuery(LocalDate from, LocalDate to, String cashier, SortKey sortKey, boolean descending) {
+        this.from = from;
+        this.to = to;
+        this.cashier = cashier == null || cashier.isBlank() ? null : cashier.trim().toLowerCase(Locale.ROOT);
+        this.sortKey = sortKey;
+        this.descending = descending;
+    }
+
+    public TransactionQuery sortedBy(SortKey sortKey, boolean descending) {
+        return new TransactionQuery(from, to, cashier, sortKey, descending);
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public String getCashier() {
+        return cashier;
+    }
+
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public long getFromDay() {
+        return from == null ? Long.MIN_VALUE : from.toEpochDay();
+    }
+
+    public long getToDay() {
+        return to == null ? Long.MAX_VALUE : to.toEpochDay();
+    }
+
+    // Day segments hold whole days, so the period is settled by the segments read; only the cashier is checked.
+    public boolean matches(Transaction transaction) {
+        if (cashier == null) {
+            return true;
+        }
+        User user = transaction.getCashier();
+        return user != null && user.getUsername() != null
+                && user.getUsername().toLowerCase(Locale.ROOT).contains(cashier);
+    }
+
+    // Store order needs no decoding: the rows are the records of each segment in turn.
+    public boolean isInStoreOrder() {
+        return cashier == null && sortKey == SortKey.DATE;
+    }
+}
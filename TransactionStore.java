@@ -0,0 +1,513 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/*
+ * Transactions stored as one append-only segment per day, laid out as transactions/yyyy/MM/dd.seg.
+ * The manifest lists every segment with its record count and id range, so reports can open only the
+ * segments of the period they cover and nothing has to be read up front.
+ */
+public class TransactionStore {
+    private final File rootDir;
+    private final File manifestFile;
+    private final TransactionCodec codec;
+    private TreeMap<Long, SegmentInfo> manifest;
+    private long currentDay = Long.MIN_VALUE;
+    private TransactionJournal currentSegment;
+    private final Map<Long, TimeIndex> timeIndexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TimeIndex> eldest) {
+            return size() > TIME_INDEX_CACHE_SIZE;
+        }
+    };
+    private static final int TIME_INDEX_CACHE_SIZE = 64;
+
+    // Timestamps and byte offsets of one segment's records, in append order (which is time order).
+    private static class TimeIndex {
+        long[] times;
+        long[] offsets;
+        int count;
+
+        TimeIndex(long[][] scanned) {
+            times = scanned[0];
+            offsets = scanned[1];
+            count = times.length;
+        }
+
+        void add(long time, long offset) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, Math.max(16, count * 2));
+                offsets = Arrays.copyOf(offsets, times.length);
+            }
+            times[count] = time;
+            offsets[count] = offset;
+            count++;
+        }
+
+        // First record at or after time.
+        int lowerBound(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // firstID and lastID are the lowest and highest IDs in the segment. Terminals sharing the store take IDs
+    // from their own blocks, so records are not in ID order.
+    public static class SegmentInfo implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int count;
+        int firstID;
+        int lastID;
+        boolean sealed;
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getFirstID() {
+            return firstID;
+        }
+
+        public int getLastID() {
+            return lastID;
+        }
+
+        void addID(int id) {
+            firstID = count == 0 ? id : Math.min(firstID, id);
+            lastID = count == 0 ? id : Math.max(lastID, id);
+            count++;
+        }
+
+        public boolean isSealed() {
+            return sealed;
+        }
+
+        SegmentInfo copy() {
+            SegmentInfo copy = new SegmentInfo();
+            copy.count = count;
+            copy.firstID = firstID;
+            copy.lastID = lastID;
+            copy.sealed = sealed;
+            return copy;
+        }
+    }
+
+    public TransactionStore(String rootPath, TransactionCodec codec) {
+        this.rootDir = new File(rootPath);
+        this.manifestFile = new File(rootDir, "manifest.bin");
+        this.codec = codec;
+        loadManifest();
+    }
+
+    public boolean exists() {
+        return manifestFile.exists();
+    }
+
+    // Returns the record's position (see position()), or -1 if it could not be written.
+    public long append(Transaction transaction) {
+        long day = epochDay(transaction.getDate());
+        TransactionJournal segment = segmentForAppend(day);
+        long offset = segment.append(transaction);
+        if (offset < 0) {
+            return -1;
+        }
+        manifest.get(day).addID(transaction.getTransactionID());
+        synchronized (timeIndexes) {
+            // An index scanned from the file since the write above already has the record.
+            TimeIndex timeIndex = timeIndexes.get(day);
+            if (timeIndex != null && (timeIndex.count == 0 || timeIndex.offsets[timeIndex.count - 1] < offset)) {
+                timeIndex.add(transaction.getDate().getTime(), offset);
+            }
+        }
+        return position(day, offset);
+    }
+
+    // A position packs the segment's epoch day above a 40-bit byte offset within that segment.
+    public static long position(long epochDay, long offset) {
+        return (epochDay << 40) | offset;
+    }
+
+    public static long positionDay(long position) {
+        return position >>> 40;
+    }
+
+    public static long positionOffset(long position) {
+        return position & ((1L << 40) - 1);
+    }
+
+    // Reads the records at the given positions, opening each day's segment once for a run of positions.
+    public ArrayList<Transaction> read(long[] positions, int count) {
+        ArrayList<Transaction> result = new ArrayList<>(count);
+        long[] offsets = new long[count];
+        int runStart = 0;
+        while (runStart < count) {
+            long day = positionDay(positions[runStart]);
+            int runEnd = runStart;
+            while (runEnd < count && positionDay(positions[runEnd]) == day) {
+                offsets[runEnd] = positionOffset(positions[runEnd]);
+                runEnd++;
+            }
+            result.addAll(new TransactionJournal(segmentFile(day).getPath(), codec).readAt(offsets, runStart, runEnd));
+            runStart = runEnd;
+        }
+        return result;
+    }
+
+    // Visits every stored transaction with its position, oldest segment first.
+    public void forEachRecord(ObjLongConsumer<Transaction> visitor) {
+        for (Long day : new ArrayList<>(manifest.keySet())) {
+            new TransactionJournal(segmentFile(day).getPath(), codec)
+                    .forEachRecord((transaction, offset) -> visitor.accept(transaction, position(day, offset)));
+        }
+    }
+
+    // Visits the first limit records of one segment with their positions. Like forEachInSegment it does not
+    // touch the manifest.
+    public void forEachRecordInSegment(long epochDay, int limit, ObjLongConsumer<Transaction> visitor) {
+        new TransactionJournal(segmentFile(epochDay).getPath(), codec)
+                .forEachRecord(limit, (transaction, offset) -> visitor.accept(transaction, position(epochDay, offset)));
+    }
+
+    // Positions of records from (inclusive) to to (exclusive) of one segment, in append order, taken from
+    // its time index so nothing is decoded.
+    public long[] positionsInSegment(long epochDay, int from, int to) {
+        long[] positions = new long[to - from];
+        synchronized (timeIndexes) {
+            TimeIndex timeIndex = timeIndex(epochDay);
+            for (int i = from; i < to; i++) {
+                positions[i - from] = position(epochDay, timeIndex.offsets[i]);
+            }
+        }
+        return positions;
+    }
+
+    // Bulk load used when migrating older files: each day's segment is written once.
+    public void importTransactions(List<Transaction> transactions) {
+        TreeMap<Long, List<Transaction>> byDay = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            byDay.computeIfAbsent(epochDay(transaction.getDate()), day -> new ArrayList<>()).add(transaction);
+        }
+        for (Map.Entry<Long, List<Transaction>> entry : byDay.entrySet()) {
+            List<Transaction> dayTransactions = new ArrayList<>(readDay(entry.getKey()));
+            dayTransactions.addAll(entry.getValue());
+            File segmentFile = segmentFile(entry.getKey());
+            segmentFile.getParentFile().mkdirs();
+            new TransactionJournal(segmentFile.getPath(), codec).rewrite(dayTransactions);
+
+            SegmentInfo info = new SegmentInfo();
+            for (Transaction transaction : dayTransactions) {
+                info.addID(transaction.getTransactionID());
+            }
+            manifest.put(entry.getKey(), info);
+        }
+        currentDay = Long.MIN_VALUE;
+        currentSegment = null;
+        saveManifest();
+    }
+
+    public ArrayList<Transaction> readDay(long epochDay) {
+        if (!manifest.containsKey(epochDay)) {
+            return new ArrayList<>();
+        }
+        if (epochDay == currentDay) {
+            return currentSegment.replay();
+        }
+        return new TransactionJournal(segmentFile(epochDay).getPath(), codec).replay();
+    }
+
+    // Transactions with fromMillis <= time < toMillis among the first counts.get(day) records of each segment
+    // in counts, oldest first. counts is taken by the caller under the lock appends hold, so the manifest is
+    // not touched here and every record read is completely written. Only the segments of the days touched
+    // are opened, and inside the first and last of them the bounds are found by binary search on the time
+    // index.
+    public Stream<Transaction> streamRange(Map<Long, Integer> counts, long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            return Stream.empty();
+        }
+        long fromDay = epochDay(fromMillis);
+        long toDay = epochDay(toMillis - 1);
+        return new ArrayList<>(counts.entrySet()).stream()
+                .filter(entry -> entry.getKey() >= fromDay && entry.getKey() <= toDay)
+                .flatMap(entry -> {
+                    long day = entry.getKey();
+                    TransactionJournal segment = new TransactionJournal(segmentFile(day).getPath(), codec);
+                    if (day != fromDay && day != toDay) {
+                        return segment.stream().limit(entry.getValue());
+                    }
+                    long[] offsets = offsetsBetween(day, entry.getValue(),
+                            day == fromDay ? fromMillis : Long.MIN_VALUE, day == toDay ? toMillis : Long.MAX_VALUE);
+                    return offsets.length == 0 ? Stream.empty() : segment.readAt(offsets, 0, offsets.length).stream();
+                });
+    }
+
+    // The first counts.get(day) records of each segment in counts, oldest first; see streamRange for counts.
+    public Stream<Transaction> streamSegments(Map<Long, Integer> counts) {
+        return new ArrayList<>(counts.entrySet()).stream()
+                .flatMap(entry -> new TransactionJournal(segmentFile(entry.getKey()).getPath(), codec).stream()
+                        .limit(entry.getValue()));
+    }
+
+    // Byte offsets of the records with fromMillis <= time < toMillis among the first limit records of one
+    // segment. Copied with the cache locked: an append may grow the index's arrays and count meanwhile.
+    private long[] offsetsBetween(long day, int limit, long fromMillis, long toMillis) {
+        synchronized (timeIndexes) {
+            TimeIndex timeIndex = timeIndex(day);
+            int end = Math.min(limit, timeIndex.count);
+            int from = fromMillis == Long.MIN_VALUE ? 0 : Math.min(end, timeIndex.lowerBound(fromMillis));
+            int to = toMillis == Long.MAX_VALUE ? end : Math.min(end, timeIndex.lowerBound(toMillis));
+            return from >= to ? new long[0] : Arrays.copyOfRange(timeIndex.offsets, from, to);
+        }
+    }
+
+    // Number of transactions with fromMillis <= time < toMillis among the first counts.get(day) records of
+    // each segment in counts (see streamRange), answered from the time indexes alone.
+    public int countRange(Map<Long, Integer> counts, long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            return 0;
+        }
+        long fromDay = epochDay(fromMillis);
+        long toDay = epochDay(toMillis - 1);
+        int count = 0;
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            long day = entry.getKey();
+            if (day < fromDay || day > toDay) {
+                continue;
+            }
+            if (day != fromDay && day != toDay) {
+                count += entry.getValue();
+                continue;
+            }
+            synchronized (timeIndexes) {
+                TimeIndex timeIndex = timeIndex(day);
+                int end = Math.min(entry.getValue(), timeIndex.count);
+                int from = day == fromDay ? Math.min(end, timeIndex.lowerBound(fromMillis)) : 0;
+                int to = day == toDay ? Math.min(end, timeIndex.lowerBound(toMillis)) : end;
+                count += Math.max(0, to - from);
+            }
+        }
+        return count;
+    }
+
+    // Lanes append on their own threads while reports and the sales table read, so the cache is locked.
+    private TimeIndex timeIndex(long day) {
+        synchronized (timeIndexes) {
+            return timeIndexes.computeIfAbsent(day,
+                    d -> new TimeIndex(new TransactionJournal(segmentFile(d).getPath(), codec).scanTimes()));
+        }
+    }
+
+    // Streams segment by segment, decoding records only as they are consumed.
+    public Stream<Transaction> stream() {
+        return streamDays(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Both ends inclusive.
+    public Stream<Transaction> streamDays(long fromDay, long toDay) {
+        return new ArrayList<>(manifest.subMap(fromDay, true, toDay, true).keySet()).stream()
+                .flatMap(day -> new TransactionJournal(segmentFile(day).getPath(), codec).stream());
+    }
+
+    // The records stored after the first skip records of epochDay's segment, in store order. The skipped
+    // records are passed over through the time index, not decoded.
+    public Stream<Transaction> streamAfter(long epochDay, int skip) {
+        return new ArrayList<>(manifest.tailMap(epochDay, true).keySet()).stream()
+                .flatMap(day -> {
+                    if (day != epochDay || skip == 0) {
+                        return new TransactionJournal(segmentFile(day).getPath(), codec).stream();
+                    }
+                    TimeIndex timeIndex = timeIndex(day);
+                    if (skip >= timeIndex.count) {
+                        return Stream.empty();
+                    }
+                    return new TransactionJournal(segmentFile(day).getPath(), codec)
+                            .readAt(timeIndex.offsets, skip, timeIndex.count).stream();
+                });
+    }
+
+    // Closes a day for good: its summary is written next to the segment as dd.sum and the segment file is
+    // made read-only, so nothing can be appended to it afterwards. Changes the manifest, so call it under the
+    // lock appends hold.
+    public void sealDay(long epochDay, SalesSummary summary) {
+        SegmentInfo info = manifest.get(epochDay);
+        if (info == null) {
+            return;
+        }
+        File summaryFile = summaryFile(epochDay);
+        File tempFile = new File(summaryFile.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeObject(summary);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), summaryFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        segmentFile(epochDay).setReadOnly();
+        if (epochDay == currentDay) {
+            currentDay = Long.MIN_VALUE;
+            currentSegment = null;
+        }
+        info.sealed = true;
+        saveManifest();
+    }
+
+    // The summary written when the day was sealed, or null if there is none. Like forEachInSegment it does
+    // not touch the manifest; check SegmentInfo.isSealed first.
+    public SalesSummary readDaySummary(long epochDay) {
+        File summaryFile = summaryFile(epochDay);
+        if (!summaryFile.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(summaryFile)))) {
+            Object data = in.readObject();
+            if (data instanceof SalesSummary) {
+                return (SalesSummary) data;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // Reads the first limit records of one segment without touching the manifest, so report threads can
+    // call it while the UI thread appends; limit keeps them to the counts they snapshotted.
+    public void forEachInSegment(long epochDay, int limit, Consumer<Transaction> visitor) {
+        try (Stream<Transaction> transactions = new TransactionJournal(segmentFile(epochDay).getPath(), codec).stream()) {
+            transactions.limit(limit).forEach(visitor);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (SegmentInfo info : manifest.values()) {
+            size += info.count;
+        }
+        return size;
+    }
+
+    // The highest ID stored, which need not be the newest transaction's.
+    public int getHighestTransactionID() {
+        int highest = 0;
+        for (SegmentInfo info : manifest.values()) {
+            if (info.count > 0) {
+                highest = Math.max(highest, info.lastID);
+            }
+        }
+        return highest;
+    }
+
+    public TreeMap<Long, SegmentInfo> getManifest() {
+        return manifest;
+    }
+
+    public static long epochDay(Date date) {
+        return epochDay(date.getTime());
+    }
+
+    public static long epochDay(long millis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).toEpochDay();
+    }
+
+    public static long startOfDay(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private File segmentFile(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return new File(rootDir, String.format("%04d%s%02d%s%02d.seg",
+                date.getYear(), File.separator, date.getMonthValue(), File.separator, date.getDayOfMonth()));
+    }
+
+    private File summaryFile(long epochDay) {
+        String segmentPath = segmentFile(epochDay).getPath();
+        return new File(segmentPath.substring(0, segmentPath.length() - ".seg".length()) + ".sum");
+    }
+
+    // The manifest is only rewritten when a new segment is opened; the counts of the newest segment
+    // are recovered from the segment itself on startup.
+    private TransactionJournal segmentForAppend(long day) {
+        if (day != currentDay) {
+            File segmentFile = segmentFile(day);
+            segmentFile.getParentFile().mkdirs();
+            currentSegment = new TransactionJournal(segmentFile.getPath(), codec);
+            currentDay = day;
+            if (!manifest.containsKey(day)) {
+                manifest.put(day, new SegmentInfo());
+                saveManifest();
+            }
+        }
+        return currentSegment;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadManifest() {
+        manifest = new TreeMap<>();
+        if (!manifestFile.exists()) {
+            return;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            Object data = in.readObject();
+            if (data instanceof TreeMap<?, ?>) {
+                manifest = (TreeMap<Long, SegmentInfo>) data;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        if (!manifest.isEmpty()) {
+            long lastDay = manifest.lastKey();
+            long[] scanned = new TransactionJournal(segmentFile(lastDay).getPath(), codec).scanIDs();
+            SegmentInfo info = manifest.get(lastDay);
+            info.count = (int) scanned[0];
+            if (info.count > 0) {
+                info.firstID = (int) scanned[1];
+                info.lastID = (int) scanned[2];
+            }
+        }
+    }
+
+    private void saveManifest() {
+        rootDir.mkdirs();
+        File tempFile = new File(manifestFile.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeObject(manifest);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), manifestFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -6,12 +6,17 @@ import java.util.ArrayList;
 public class UserManager {
     private ArrayList<User> users;
     private final String filePath = "users.bin";
+    private Runnable changeListener = () -> {};
 
     public UserManager() {
         users = new ArrayList<>();
         loadUsers();
     }
 
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
     public void addUser(User user) {
         users.add(user);
         saveUsers();
@@ -33,6 +38,7 @@ public class UserManager {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        changeListener.run();
     }
 
     public ArrayList<User> getAllUsers() {